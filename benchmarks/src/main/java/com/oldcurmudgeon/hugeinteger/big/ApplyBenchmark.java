@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bits.apply for each Op and add - against the same on BigInteger.
+ *
+ * @author OldCurmudgeon.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplyBenchmark {
+
+  // Which op.
+  @State(Scope.Benchmark)
+  public static class Which {
+    @Param({"xor", "and", "or"})
+    public String op;
+
+    Bits.Op op() {
+      return Bits.Op.valueOf(op);
+    }
+  }
+
+  @Benchmark
+  public Bits apply(Numbers n, Which which) {
+    return Bits.apply(n.a, n.b, which.op());
+  }
+
+  // The same giving word granularity.
+  @Benchmark
+  public Bits applyWords(Numbers n, Which which) {
+    return Bits.apply(n.a, n.b, which.op(), HugeBits.WORDS);
+  }
+
+  @Benchmark
+  public BigInteger applyBigInteger(Numbers n, Which which) {
+    switch (which.op()) {
+      case xor:
+        return n.bigA.xor(n.bigB);
+      case and:
+        return n.bigA.and(n.bigB);
+      default:
+        return n.bigA.or(n.bigB);
+    }
+  }
+
+  @Benchmark
+  public Bits add(Numbers n) {
+    return Bits.add(n.a, n.b);
+  }
+
+  @Benchmark
+  public BigInteger addBigInteger(Numbers n) {
+    return n.bigA.add(n.bigB);
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building, adding to, walking and printing HugeBits.
+ *
+ * Each has a BigInteger baseline doing the nearest equivalent.
+ *
+ * @author OldCurmudgeon.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HugeBitsBenchmark {
+
+  // Which base to print in.
+  @State(Scope.Benchmark)
+  public static class Base {
+    @Param({"2", "10", "16"})
+    public int base;
+  }
+
+  // All in one go through the Builder.
+  @Benchmark
+  public HugeBits build(Numbers n) {
+    return new HugeBits.Builder().add(n.bigsA).build();
+  }
+
+  // One at a time - every add normalises.
+  @Benchmark
+  public HugeBits add(Numbers n) {
+    HugeBits h = new HugeBits();
+    for (Big big : n.bigsA) {
+      h.add(big);
+    }
+    return h;
+  }
+
+  // Adding on top of what is there - carries and joins.
+  @Benchmark
+  public HugeBits addOverlapping(Numbers n) {
+    HugeBits h = new HugeBits.Builder().add(n.bigsA).build();
+    for (Big big : n.bigsB) {
+      h.add(big);
+    }
+    return h;
+  }
+
+  @Benchmark
+  public BigInteger addBigInteger(Numbers n) {
+    BigInteger v = BigInteger.ZERO;
+    for (Big big : n.bigsA) {
+      v = v.add(big.value().shiftLeft(big.index().intValue()));
+    }
+    return v;
+  }
+
+  @Benchmark
+  public void iterate(Numbers n, Blackhole bh) {
+    for (Sparse.Iterator<Big, BigInteger> i = n.a.iterator(); i.hasNext();) {
+      bh.consume(i.next());
+    }
+  }
+
+  @Benchmark
+  public void reverseIterate(Numbers n, Blackhole bh) {
+    for (Sparse.Iterator<Big, BigInteger> i = n.a.reverseIterator(); i.hasNext();) {
+      bh.consume(i.next());
+    }
+  }
+
+  @Benchmark
+  public String toString(Numbers n, Base base) {
+    return n.a.toString(base.base);
+  }
+
+  @Benchmark
+  public String toStringBigInteger(Numbers n, Base base) {
+    return n.bigA.toString(base.base);
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The numbers the benchmarks work on.
+ *
+ * Two of them made the same way from different seeds so ops have
+ * something to overlap. Each comes as its Bigs, as HugeBits and as one
+ * BigInteger for the baselines.
+ *
+ * density - how many of the bytes are not zero.
+ * segments - how many Bigs.
+ * width - how many bytes in each Big.
+ *
+ * Override any of them with -p on the command line.
+ *
+ * @author OldCurmudgeon.
+ */
+@State(Scope.Benchmark)
+public class Numbers {
+  @Param({"0.05", "0.5", "1"})
+  public double density;
+  @Param({"100", "1000"})
+  public int segments;
+  @Param({"8", "64"})
+  public int width;
+  // The Bigs.
+  public List<Big> bigsA;
+  public List<Big> bigsB;
+  // As HugeBits.
+  public HugeBits a;
+  public HugeBits b;
+  // As BigIntegers.
+  public BigInteger bigA;
+  public BigInteger bigB;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    bigsA = bigs(new Random(1));
+    bigsB = bigs(new Random(2));
+    a = new HugeBits.Builder().add(bigsA).build();
+    b = new HugeBits.Builder().add(bigsB).build();
+    bigA = Bits.toBigInteger(a);
+    bigB = Bits.toBigInteger(b);
+  }
+
+  // Random Bigs spaced out to give the density.
+  private List<Big> bigs(Random r) {
+    List<Big> bigs = new ArrayList<>(segments);
+    // Average gap in bytes to get the density.
+    int gap = (int) Math.round(width * (1 - density) / density);
+    long index = 0;
+    for (int i = 0; i < segments; i++) {
+      byte[] bytes = new byte[width];
+      r.nextBytes(bytes);
+      // No zero bytes so the density is what was asked for.
+      for (int j = 0; j < bytes.length; j++) {
+        if (bytes[j] == 0) {
+          bytes[j] = 1;
+        }
+      }
+      bigs.add(new Big(index * 8, new BigInteger(1, bytes)));
+      index += width + (gap == 0 ? 0 : 1 + r.nextInt(2 * gap));
+    }
+    return bigs;
+  }
+
+}
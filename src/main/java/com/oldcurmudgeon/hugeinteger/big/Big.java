@@ -32,20 +32,50 @@ public class Big implements Sparse<BigInteger, BigInteger> {
   // The granuality.
   private static final int G = 8;
   private static final BigInteger BG = BigInteger.valueOf(G);
+  // Indexes with fewer bits than this - below BigCursor.LIMIT - are also kept as a long.
+  private static final int LONG = 63;
   // A zero for me.
   public static final Big ZERO = new Big(BigInteger.ZERO);
   // My sparse value.
   private final BigInteger index;
   private final BigInteger value;
+  // The index as a long - NO_INDEX if it has LONG bits or more.
+  private final long at;
+  // Worked out when first asked for.
+  private int hash = 0;
 
   public Big(BigInteger index, BigInteger value) {
     // Ensure equals works.
     // Shift to get the lowest bit at 0.
-    BigInteger shift = index.add(BigInteger.valueOf(value.getLowestSetBit()));
+    int low = value.getLowestSetBit();
+    if (index.signum() >= 0 && index.bitLength() < LONG && index.longValue() + low >= 0) {
+      // All in longs - most are.
+      long i = index.longValue();
+      long aligned = (i + low) & -G;
+      this.index = aligned == i ? index : BigInteger.valueOf(aligned);
+      // The low bits may have carried it past.
+      this.at = aligned < 1L << (LONG - 1) ? aligned : Sparse.NO_INDEX;
+      // Shared with other Bigs of the same value if interning.
+      this.value = BigInterner.intern(value.shiftLeft((int) (i - aligned)));
+      return;
+    }
+    BigInteger shift = index.add(BigInteger.valueOf(low));
     // Record index and value.
     // Make index a multiple of 8.
     this.index = shift.divide(BG).multiply(BG);
-    this.value = value.shiftLeft(index.subtract(this.index).intValue());
+    this.at = asLong(this.index);
+    this.value = BigInterner.intern(value.shiftLeft(index.subtract(this.index).intValue()));
+  }
+
+  // Just the index - for a Run which keeps its value some other way.
+  Big(BigInteger index, Void run) {
+    this.index = index;
+    this.at = asLong(index);
+    this.value = BigInteger.ZERO;
+  }
+
+  private static long asLong(BigInteger index) {
+    return index.signum() >= 0 && index.bitLength() < LONG ? index.longValue() : Sparse.NO_INDEX;
   }
 
   public Big(long index, BigInteger value) {
@@ -64,8 +94,18 @@ public class Big implements Sparse<BigInteger, BigInteger> {
     this(BigInteger.valueOf(value));
   }
 
+  // A plain Big of the same bits - a Run is built.
   public Big(Big value) {
-    this(value.index, value.value);
+    this(value.index, value.value());
+  }
+
+  // The same bits as the same kind of Big - a Run stays a Run.
+  public static Big copyOf(Big big) {
+    if (big instanceof Run) {
+      Run run = (Run) big;
+      return new Run(run.index(), run.count(), run.fill());
+    }
+    return new Big(big);
   }
 
   @Override
@@ -78,11 +118,144 @@ public class Big implements Sparse<BigInteger, BigInteger> {
     return BigInteger.valueOf(value.bitLength());
   }
 
+  // The index as a long - Sparse.NO_INDEX if it is too big.
+  public long indexAsLong() {
+    return at;
+  }
+
+  // The length as an int - -1 if it is too big.
+  public int lengthAsInt() {
+    return value.bitLength();
+  }
+
   @Override
   public BigInteger value() {
     return value;
   }
 
+  // Bit index just past the top byte.
+  BigInteger end() {
+    return index.add(BigInteger.valueOf((value.bitLength() + G - 1) / G).multiply(BG));
+  }
+
+  /*
+   * Bit searches - all take and give whole bit indexes, not offsets.
+   *
+   * A normalised Big has no zero bytes so the loops only look at a few
+   * bits. If we give up the rest is done in one go by BigInteger.
+   */
+  private static final int LOOK = 64;
+
+  // Is that bit set?
+  boolean testBit(BigInteger bit) {
+    BigInteger offset = bit.subtract(index);
+    return offset.signum() >= 0 && offset.compareTo(length()) < 0 && value.testBit(offset.intValue());
+  }
+
+  // The lowest set bit at or above from - null if none.
+  BigInteger nextSetBit(BigInteger from) {
+    BigInteger offset = from.subtract(index);
+    if (offset.signum() <= 0) {
+      return value.signum() == 0 ? null : index.add(BigInteger.valueOf(value.getLowestSetBit()));
+    }
+    if (offset.compareTo(length()) >= 0) {
+      return null;
+    }
+    int i = offset.intValue();
+    for (int stop = Math.min(i + LOOK, value.bitLength()); i < stop; i++) {
+      if (value.testBit(i)) {
+        return index.add(BigInteger.valueOf(i));
+      }
+    }
+    // A long gap.
+    return index.add(BigInteger.valueOf(i + value.shiftRight(i).getLowestSetBit()));
+  }
+
+  // The highest set bit at or below at - null if none.
+  BigInteger previousSetBit(BigInteger at) {
+    BigInteger offset = at.subtract(index);
+    if (offset.signum() < 0) {
+      return null;
+    }
+    if (offset.compareTo(length()) >= 0) {
+      return value.signum() == 0 ? null : index.add(BigInteger.valueOf(value.bitLength() - 1));
+    }
+    int i = offset.intValue();
+    for (int stop = Math.max(i - LOOK, -1); i > stop; i--) {
+      if (value.testBit(i)) {
+        return index.add(BigInteger.valueOf(i));
+      }
+    }
+    // A long gap - keep just the bits at or below i.
+    int top = value.and(BigInteger.ONE.shiftLeft(i + 1).subtract(BigInteger.ONE)).bitLength() - 1;
+    return top < 0 ? null : index.add(BigInteger.valueOf(top));
+  }
+
+  // How many bits are set.
+  BigInteger bitCount() {
+    return BigInteger.valueOf(value.bitCount());
+  }
+
+  // How many bits are set below bit.
+  BigInteger rank(BigInteger bit) {
+    BigInteger offset = bit.subtract(index);
+    if (offset.signum() <= 0) {
+      return BigInteger.ZERO;
+    }
+    if (offset.compareTo(length()) >= 0) {
+      return bitCount();
+    }
+    return BigInteger.valueOf(value.and(BigInteger.ONE.shiftLeft(offset.intValue()).subtract(BigInteger.ONE)).bitCount());
+  }
+
+  // Where the k'th set bit is (from 0) - there must be more than k.
+  BigInteger select(BigInteger k) {
+    int left = k.intValue();
+    byte[] bytes = bytes();
+    for (int i = 0;; i++) {
+      int count = Integer.bitCount(bytes[i] & 0xFF);
+      if (left < count) {
+        return index.add(BigInteger.valueOf(i * G + select(bytes[i], left)));
+      }
+      left -= count;
+    }
+  }
+
+  // Where the k'th set bit of a byte is.
+  static int select(byte b, int k) {
+    int bits = b & 0xFF;
+    for (int i = 0; i < k; i++) {
+      // Drop the lowest.
+      bits &= bits - 1;
+    }
+    return Integer.numberOfTrailingZeros(bits);
+  }
+
+  // Eight bytes from i as a long - least significant first.
+  static long word(byte[] bytes, int i) {
+    return (bytes[i] & 0xFFL)
+            | (bytes[i + 1] & 0xFFL) << 8
+            | (bytes[i + 2] & 0xFFL) << 16
+            | (bytes[i + 3] & 0xFFL) << 24
+            | (bytes[i + 4] & 0xFFL) << 32
+            | (bytes[i + 5] & 0xFFL) << 40
+            | (bytes[i + 6] & 0xFFL) << 48
+            | (bytes[i + 7] & 0xFFL) << 56;
+  }
+
+  // The value as bytes - least significant first and no sign byte.
+  byte[] bytes() {
+    byte[] be = value.toByteArray();
+    byte[] le = new byte[(value.bitLength() + 7) / G];
+    if (BitsMetrics.on()) {
+      BitsMetrics.allocated(be.length + le.length);
+    }
+    for (int i = 0; i < le.length; i++) {
+      le[i] = be[be.length - 1 - i];
+    }
+    return le;
+  }
+
   @Override
   public String toString() {
     return toString(2);
@@ -102,28 +275,45 @@ public class Big implements Sparse<BigInteger, BigInteger> {
 
   @Override
   public boolean equals(Object o) {
-    if (o instanceof Big) {
+    if (o == this) {
+      return true;
+    }
+    if (o instanceof Big && !(o instanceof Run)) {
       Big it = (Big) o;
       /* 
        * All Bigs are forced to have the bottom byte non-zero so if both index and value are the same
        * then the number is the same.
+       *
+       * Interned values are the same object - and differing hashes settle most of the rest.
        */
       return it.index.equals(index)
-              && it.value.equals(value);
+              && (it.value == value || it.hashCode() == hashCode() && it.value.equals(value));
     }
     if (o instanceof BigInteger) {
-      // Shift by the index - may blow up when huge.
-      return value.shiftLeft(index.intValue()).equals((BigInteger) o);
+      BigInteger it = (BigInteger) o;
+      if (index.bitLength() > 31) {
+        // No BigInteger reaches that far up.
+        return value.signum() == 0 && it.signum() == 0;
+      }
+      // Shift it down rather than shifting us up.
+      int shift = index.intValue();
+      return it.getLowestSetBit() >= shift && it.shiftRight(shift).equals(value)
+              || value.signum() == 0 && it.signum() == 0;
     }
     return false;
   }
 
   @Override
   public int hashCode() {
-    int hash = 7;
-    hash = 17 * hash + Objects.hashCode(this.index);
-    hash = 17 * hash + Objects.hashCode(this.value);
-    return hash;
+    // BigInteger does not keep its hash so we do.
+    int h = hash;
+    if (h == 0) {
+      h = 7;
+      h = 17 * h + Objects.hashCode(this.index);
+      h = 17 * h + Objects.hashCode(this.value);
+      hash = h;
+    }
+    return h;
   }
 
   public static void main(String[] args) {
@@ -42,7 +42,15 @@ public class BigBits extends Bits<Big> {
 
   @Override
   public BigInteger length() {
-    return bits.length();
+    // Any zero bytes at the bottom went into its index.
+    return bits.length().signum() == 0 ? BigInteger.ZERO : bits.index().add(bits.length());
+  }
+
+  @Override
+  BigInteger boundary(BigInteger at) {
+    // Just the one Big - it is either across it or not.
+    boolean across = bits.index().compareTo(at) < 0 && bits.index().add(bits.length()).compareTo(at) > 0;
+    return across ? bits.index() : at;
   }
 
   class BigBitsIterator extends Bits.BitsIterator {
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+
+/**
+ * Walks the bytes of a stream of Bigs in ascending order.
+ *
+ * Every Big starts on a byte boundary so two cursors can always
+ * be lined up against each other a byte at a time. The stream
+ * must be ascending and its Bigs must not overlap.
+ *
+ * A Run is walked without ever being built - every byte of it is its fill.
+ *
+ * Where we are is kept in a long while it fits so the walk makes no
+ * BigIntegers - see startAsLong.
+ *
+ * @author OldCurmudgeon.
+ */
+class BigCursor {
+  private static final byte[] NONE = new byte[0];
+  // Longs go up to here - leaves room to add an int's worth of bytes without overflow.
+  static final long LIMIT = 1L << 62;
+  // Where the Bigs come from.
+  private final Sparse.Iterator<Big, BigInteger> it;
+  // The bytes of the current Big - least significant first.
+  private byte[] bytes = NONE;
+  // Bit index of bytes[0] - or of the current byte in a run - NO_INDEX if it is past LIMIT.
+  private long at = 0;
+  // The same when it is past LIMIT.
+  private BigInteger index = null;
+  // How far into bytes we are.
+  private int pos = 0;
+  // Bit index of bytes[pos] - worked out when asked for.
+  private BigInteger start = null;
+  // The byte of the current Run - 0 if it is not a Run.
+  private byte fill = 0;
+  // Bytes left in the Run.
+  private BigInteger left = BigInteger.ZERO;
+  // How many Bigs we have taken.
+  private long visited = 0;
+
+  BigCursor(Sparse.Iterator<Big, BigInteger> it) {
+    this.it = it;
+  }
+
+  // Is there anything left - steps on to the next Big if necessary.
+  boolean hasData() {
+    while (fill != 0 ? left.signum() == 0 : pos >= bytes.length) {
+      if (!it.hasNext()) {
+        return false;
+      }
+      Big next = it.next();
+      visited += 1;
+      if (next instanceof Run) {
+        // Never built.
+        Run run = (Run) next;
+        fill = run.fill();
+        left = run.count();
+        bytes = NONE;
+      } else {
+        fill = 0;
+        bytes = next.bytes();
+      }
+      at = next.indexAsLong();
+      if (at == Sparse.NO_INDEX || at >= LIMIT) {
+        at = Sparse.NO_INDEX;
+        index = next.index();
+      }
+      pos = 0;
+      start = at == Sparse.NO_INDEX ? index : null;
+    }
+    return true;
+  }
+
+  // How many Bigs so far.
+  long visited() {
+    return visited;
+  }
+
+  // Bit index of the current byte.
+  BigInteger start() {
+    if (start == null) {
+      start = at != Sparse.NO_INDEX ? BigInteger.valueOf(startAsLong())
+              : fill != 0 ? index : index.add(BigInteger.valueOf(pos).multiply(Bits.EIGHT));
+    }
+    return start;
+  }
+
+  // Bit index of the current byte as a long - NO_INDEX if it is too big.
+  long startAsLong() {
+    return at == Sparse.NO_INDEX ? Sparse.NO_INDEX : fill != 0 ? at : at + 8L * pos;
+  }
+
+  // Are we in a Run?
+  boolean isRun() {
+    return fill != 0;
+  }
+
+  // The byte of the Run we are in.
+  byte fill() {
+    return fill;
+  }
+
+  // Bytes left in the current Big - as many as an int will hold in a Run.
+  int remaining() {
+    if (fill != 0) {
+      return left.bitLength() > 31 ? Integer.MAX_VALUE : left.intValue();
+    }
+    return bytes.length - pos;
+  }
+
+  // How many of the remaining bytes lie below that bit index.
+  int remainingBelow(BigInteger at) {
+    BigInteger below = at.subtract(start()).divide(Bits.EIGHT);
+    return below.compareTo(BigInteger.valueOf(remaining())) < 0 ? below.intValue() : remaining();
+  }
+
+  // How many of the remaining bytes lie below where the other one is.
+  int remainingBelow(BigCursor other) {
+    long here = startAsLong();
+    long there = other.startAsLong();
+    if (here == Sparse.NO_INDEX || there == Sparse.NO_INDEX) {
+      return remainingBelow(other.start());
+    }
+    long below = (there - here) / 8;
+    return below < remaining() ? (int) below : remaining();
+  }
+
+  // Which is further along - as compareTo.
+  int compareTo(BigCursor other) {
+    long here = startAsLong();
+    long there = other.startAsLong();
+    if (here == Sparse.NO_INDEX || there == Sparse.NO_INDEX) {
+      return start().compareTo(other.start());
+    }
+    return here < there ? -1 : here == there ? 0 : 1;
+  }
+
+  // The byte i along from the current one.
+  byte get(int i) {
+    return fill != 0 ? fill : bytes[pos + i];
+  }
+
+  // The 8 bytes from i along as a long - there must be that many.
+  long getLong(int i) {
+    return fill != 0 ? (fill & 0xFFL) * 0x0101010101010101L : Big.word(bytes, pos + i);
+  }
+
+  // Step past n bytes.
+  void skip(int n) {
+    if (fill != 0) {
+      left = left.subtract(BigInteger.valueOf(n));
+      if (at != Sparse.NO_INDEX) {
+        at += 8L * n;
+        if (at >= LIMIT) {
+          // Over to BigInteger.
+          index = BigInteger.valueOf(at);
+          at = Sparse.NO_INDEX;
+        }
+      } else {
+        index = index.add(BigInteger.valueOf(n).multiply(Bits.EIGHT));
+      }
+    } else {
+      pos += n;
+    }
+    start = null;
+  }
+
+  // Step past everything below that bit index.
+  void skipTo(BigInteger at) {
+    if (hasData() && end().compareTo(at) <= 0) {
+      // All of this one is below - let the iterator jump the rest.
+      bytes = NONE;
+      pos = 0;
+      fill = 0;
+      left = BigInteger.ZERO;
+      it.skipTo(at);
+    }
+    while (hasData() && start().compareTo(at) < 0) {
+      skip(remainingBelow(at));
+    }
+  }
+
+  // Step past everything below where the other one is.
+  void skipTo(BigCursor other) {
+    if (hasData() && at != Sparse.NO_INDEX && fill == 0 && other.startAsLong() != Sparse.NO_INDEX
+            && other.startAsLong() < at + 8L * bytes.length) {
+      // Ends in this Big - no need to go to the iterator.
+      while (hasData() && compareTo(other) < 0) {
+        skip(remainingBelow(other));
+      }
+    } else {
+      skipTo(other.start());
+    }
+  }
+
+  // Bit index just past the current Big.
+  private BigInteger end() {
+    BigInteger index = at != Sparse.NO_INDEX ? BigInteger.valueOf(at) : this.index;
+    return fill != 0 ? index.add(left.multiply(Bits.EIGHT)) : index.add(BigInteger.valueOf(bytes.length).multiply(Bits.EIGHT));
+  }
+
+}
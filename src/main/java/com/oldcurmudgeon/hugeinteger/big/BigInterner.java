@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An optional cache of Big values so a value that turns up at many
+ * indexes is only held once.
+ *
+ * Off until enabled. Every Big made after that looks its value up here -
+ * which covers HugeBits, Bits.apply, the parsers and the streams as they
+ * all make their Bigs the same way.
+ *
+ * The cache is a fixed array of slots picked by hash. A value that finds
+ * an equal one in its slot uses that, otherwise it takes the slot over.
+ * No locks and bounded - the price is that two values sharing a slot
+ * keep knocking each other out.
+ *
+ * @author OldCurmudgeon.
+ */
+public final class BigInterner {
+  // Longer values rarely repeat and cost more to compare.
+  static final int MAX_BITS = 1024;
+  // Null when off.
+  private static volatile AtomicReferenceArray<BigInteger> slots = null;
+
+  private BigInterner() {
+  }
+
+  // Most slots - any more and rounding up overflows.
+  static final int MAX_SIZE = 1 << 30;
+
+  // Start interning with about this many slots - rounded up to a power of two.
+  public static void enable(int size) {
+    if (size <= 0 || size > MAX_SIZE) {
+      throw new IllegalArgumentException("Interner size " + size);
+    }
+    slots = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(size - 1, 1)) << 1);
+  }
+
+  // Stop - and let go of everything.
+  public static void disable() {
+    slots = null;
+  }
+
+  public static boolean enabled() {
+    return slots != null;
+  }
+
+  // The one we hold that equals value - or value itself.
+  static BigInteger intern(BigInteger value) {
+    AtomicReferenceArray<BigInteger> s = slots;
+    if (s == null || value.bitLength() > MAX_BITS) {
+      return value;
+    }
+    int h = value.hashCode();
+    int slot = (h ^ (h >>> 16)) & (s.length() - 1);
+    BigInteger held = s.get(slot);
+    if (held != null && held.equals(value)) {
+      return held;
+    }
+    // Nobody needs to see it straight away.
+    s.lazySet(slot, value);
+    return value;
+  }
+
+}
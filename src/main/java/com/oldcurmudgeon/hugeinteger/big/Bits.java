@@ -16,8 +16,17 @@
 package com.oldcurmudgeon.hugeinteger.big;
 
 import com.oldcurmudgeon.toolbox.walkers.Separator;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Defines a stream of bits to perform maths over.
@@ -46,10 +55,109 @@ public abstract class Bits<T extends Sparse<BigInteger, BigInteger>> implements
   public abstract Sparse.Iterator<T, BigInteger> iterator();
 
   public abstract Sparse.Iterator<T, BigInteger> reverseIterator();
+
+  // Just the ones from index from up to (but not including) to - nothing may straddle either.
+  public Sparse.Iterator<T, BigInteger> iterator(BigInteger from, BigInteger to) {
+    return new RangeIterator(iterator(), from, to);
+  }
   // Length in bits.
 
   public abstract BigInteger length();
 
+  /*
+   * The highest bit index at or below at that nothing straddles.
+   *
+   * Used to cut the bits into ranges that can be worked on separately.
+   * Null means we cannot tell without looking at everything.
+   */
+  BigInteger boundary(BigInteger at) {
+    return null;
+  }
+
+  /*
+   * The last one that starts at or below at - null if none.
+   *
+   * This and higher are what the bit queries use to find their way. These
+   * walk everything - anything with an index should do better.
+   */
+  T floor(BigInteger at) {
+    T floor = null;
+    for (Sparse.Iterator<T, BigInteger> i = iterator(); i.hasNext() && i.index().compareTo(at) <= 0;) {
+      floor = i.next();
+    }
+    return floor;
+  }
+
+  // The first one that starts above at - null if none.
+  T higher(BigInteger at) {
+    for (Sparse.Iterator<T, BigInteger> i = iterator(); i.hasNext();) {
+      T next = i.next();
+      if (next.index().compareTo(at) > 0) {
+        return next;
+      }
+    }
+    return null;
+  }
+
+  // Is that bit set?
+  public boolean testBit(BigInteger bit) {
+    checkBit(bit);
+    T floor = floor(bit);
+    return floor != null && big(floor).testBit(bit);
+  }
+
+  // The lowest set bit at or above from - or -1 if there is none.
+  public BigInteger nextSetBit(BigInteger from) {
+    checkBit(from);
+    T floor = floor(from);
+    BigInteger next = floor == null ? null : big(floor).nextSetBit(from);
+    if (next == null) {
+      // It must be in the next one up.
+      T higher = higher(from);
+      next = higher == null ? null : big(higher).nextSetBit(from);
+    }
+    return next == null ? NONE : next;
+  }
+
+  // The highest set bit at or below at - or -1 if there is none.
+  public BigInteger previousSetBit(BigInteger at) {
+    checkBit(at);
+    for (T floor = floor(at); floor != null; floor = floor(floor.index().subtract(BigInteger.ONE))) {
+      BigInteger previous = big(floor).previousSetBit(at);
+      if (previous != null) {
+        return previous;
+      }
+      if (floor.index().signum() == 0) {
+        break;
+      }
+    }
+    return NONE;
+  }
+
+  // Same as BigInteger - -1 if there are none.
+  public BigInteger getLowestSetBit() {
+    return nextSetBit(BigInteger.ZERO);
+  }
+
+  // Same as BigInteger.
+  public BigInteger bitLength() {
+    return length();
+  }
+
+  // None found.
+  private static final BigInteger NONE = BigInteger.ONE.negate();
+
+  static void checkBit(BigInteger bit) {
+    if (bit.signum() < 0) {
+      throw new ArithmeticException("Negative bit address");
+    }
+  }
+
+  // The searches are on Big.
+  private static Big big(Sparse<BigInteger, BigInteger> s) {
+    return s instanceof Big ? (Big) s : new Big(s.index(), s.value());
+  }
+
   protected abstract class BitsIterator implements Sparse.Iterator<T, BigInteger> {
     // The next to return - populate in getNext please.
     T next = null;
@@ -97,6 +205,71 @@ public abstract class Bits<T extends Sparse<BigInteger, BigInteger>> implements
       return hasNext() ? next.length() : null;
     }
 
+    // Primitive forms of the same.
+    @Override
+    public long indexAsLong() {
+      if (!hasNext()) {
+        return Sparse.NO_INDEX;
+      }
+      if (next instanceof Big) {
+        return ((Big) next).indexAsLong();
+      }
+      BigInteger index = next.index();
+      return index.signum() >= 0 && index.bitLength() < 63 ? index.longValue() : Sparse.NO_INDEX;
+    }
+
+    @Override
+    public int lengthAsInt() {
+      if (!hasNext()) {
+        return -1;
+      }
+      if (next instanceof Big) {
+        return ((Big) next).lengthAsInt();
+      }
+      BigInteger length = next.length();
+      return length.bitLength() < 32 ? length.intValue() : -1;
+    }
+
+    // One at a time - anything with an index should jump.
+    @Override
+    public void skipTo(BigInteger at) {
+      while (hasNext() && next.index().add(next.length()).compareTo(at) <= 0) {
+        next = null;
+      }
+    }
+
+  }
+
+  // Filters out everything outside a range.
+  private class RangeIterator extends BitsIterator {
+    private final Sparse.Iterator<T, BigInteger> it;
+    private final BigInteger from;
+    private final BigInteger to;
+
+    RangeIterator(Sparse.Iterator<T, BigInteger> it, BigInteger from, BigInteger to) {
+      this.it = it;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void getNext() {
+      // Skip the ones below.
+      while (it.hasNext() && it.index().compareTo(from) < 0) {
+        it.next();
+      }
+      // Stop at the top.
+      next = it.hasNext() && it.index().compareTo(to) < 0 ? it.next() : null;
+    }
+
+    @Override
+    public void skipTo(BigInteger at) {
+      if (next == null) {
+        it.skipTo(at);
+      }
+      super.skipTo(at);
+    }
+
   }
 
   @Override
@@ -106,232 +279,777 @@ public abstract class Bits<T extends Sparse<BigInteger, BigInteger>> implements
 
   public String toString(int base) {
     StringBuilder sb = new StringBuilder();
-    // NB - This is the bit index of the top bit.
-    BigInteger index = length();
-    // Start from the end and work backwards.
+    try {
+      writeTo(sb, base);
+    } catch (IOException e) {
+      // StringBuilder does not do that.
+      throw new IllegalStateException(e);
+    }
+    return sb.toString();
+  }
+
+  /*
+   * Write it out in that base - most significant digit first.
+   *
+   * For a power of two base each digit comes straight from its bits and
+   * the gaps between are runs of zeros so any size can be written.
+   *
+   * Other bases cannot be split into bits - every digit depends on the
+   * whole number - so it is built as one BigInteger and must fit in one.
+   * That is split in half by dividing by a power of the base and each half
+   * written separately so the digits are never all built at once - but the
+   * whole number is held throughout.
+   */
+  public void writeTo(Appendable out, int base) throws IOException {
+    if (base < Character.MIN_RADIX || base > Character.MAX_RADIX) {
+      throw new IllegalArgumentException("Bad base " + base);
+    }
+    if (Integer.bitCount(base) == 1) {
+      writeBinary(out, Integer.numberOfTrailingZeros(base));
+    } else {
+      BigInteger length = length();
+      if (length.bitLength() > 31) {
+        throw new ArithmeticException("Too big to write in base " + base + ": " + length + " bits - only a power of two base can go past 2^31.");
+      }
+      writeRadix(out, toBigInteger(this), base, 0);
+    }
+  }
+
+  // A power of two base - k bits a digit.
+  private void writeBinary(Appendable out, int k) throws IOException {
+    BigInteger bk = BigInteger.valueOf(k);
+    // The lowest digit of the one before - it may share with the next one.
+    BigInteger pendingDigit = null;
+    int pending = 0;
     for (Sparse.Iterator<T, BigInteger> i = reverseIterator(); i.hasNext();) {
-      // The value.
+      long at = i.indexAsLong();
+      int length = i.lengthAsInt();
       T next = i.next();
-      // How long is it?
-      BigInteger itsLength = next.length();
-      // Where is its top bit?
-      BigInteger itsIndex = next.index().add(itsLength);
-      // Roll out zeros to get us to that bit.
-      index = padZeros(sb, base, index, itsIndex);
-      // Emit the value.
-      sb.append(next.value().toString(base));
-      // Step down that many bits.
-      index = index.subtract(itsLength);
-    }
-    padZeros(sb, base, index, BigInteger.ZERO);
-    return sb.toString();
+      if (next.value().signum() == 0) {
+        continue;
+      }
+      BigInteger low;
+      BigInteger high;
+      int shift;
+      if (at != Sparse.NO_INDEX && length >= 0) {
+        // Small enough for longs.
+        long l = at / k;
+        low = BigInteger.valueOf(l);
+        high = BigInteger.valueOf((at + length - 1) / k);
+        shift = (int) (at - l * k);
+      } else {
+        low = next.index().divide(bk);
+        high = next.index().add(next.length()).subtract(BigInteger.ONE).divide(bk);
+        shift = next.index().subtract(low.multiply(bk)).intValue();
+      }
+      // Line it up on a digit.
+      BigInteger v = next.value().shiftLeft(shift);
+      int above = high.subtract(low).intValue();
+      if (pendingDigit != null) {
+        if (pendingDigit.equals(high)) {
+          // Same digit.
+          v = v.or(BigInteger.valueOf(pending).shiftLeft(above * k));
+        } else {
+          out.append(Character.forDigit(pending, 1 << k));
+          zeros(out, pendingDigit.subtract(high).subtract(BigInteger.ONE));
+        }
+      }
+      // All but the lowest.
+      digits(out, v, k, above);
+      pending = v.intValue() & ((1 << k) - 1);
+      pendingDigit = low;
+    }
+    if (pendingDigit == null) {
+      out.append('0');
+    } else {
+      out.append(Character.forDigit(pending, 1 << k));
+      zeros(out, pendingDigit);
+    }
   }
 
-  // Generate the right number of zeros depending on the base.
-  private BigInteger padZeros(StringBuilder sb, int base, BigInteger index, BigInteger itsIndex) {
-    // That may bits.
-    BigInteger zeroBits = index.subtract(itsIndex);
-    if ( !zeroBits.equals(BigInteger.ZERO) ) {
-      // How many bits does a zero in this base represent?
-      BigInteger bitsPerZero = BigInteger.valueOf(bitCount(base - 1));
-      // Do the right number.
-      while (index.subtract(bitsPerZero).compareTo(BigInteger.ZERO) > 0) {
-        // Right number of zeros in that base.
-        sb.append(BigInteger.ZERO.toString(base));
-        // Step that far.
-        index = index.subtract(bitsPerZero);
+  // Write digits n down to 1 of v - k bits a digit.
+  private static void digits(Appendable out, BigInteger v, int k, int n) throws IOException {
+    byte[] be = v.toByteArray();
+    char[] chunk = new char[Math.min(n, ZEROS.length())];
+    for (int d = n, c = 0; d > 0; d--) {
+      // Gather its bits.
+      int digit = 0;
+      for (int bit = d * k + k - 1; bit >= d * k; bit--) {
+        int at = be.length - 1 - bit / 8;
+        digit = (digit << 1) | (at >= 0 ? (be[at] >> (bit % 8)) & 1 : 0);
+      }
+      chunk[c++] = Character.forDigit(digit, 1 << k);
+      if (c == chunk.length || d == 1) {
+        out.append(new String(chunk, 0, c));
+        c = 0;
       }
     }
-    // Tell them where we finished.
-    return index;
   }
-  
-  private int bitCount ( int v ) {
-    // Brian Kernighan's way
-    int c;
-    for ( c = 0; v != 0; c++ ) {
-      v &= v - 1;
+
+  // Lots of zeros.
+  private static final String ZEROS = new String(new char[4096]).replace('\0', '0');
+
+  private static void zeros(Appendable out, BigInteger n) throws IOException {
+    BigInteger chunk = BigInteger.valueOf(ZEROS.length());
+    for (; n.compareTo(chunk) >= 0; n = n.subtract(chunk)) {
+      out.append(ZEROS);
+    }
+    out.append(ZEROS, 0, n.intValue());
+  }
+
+  // Below this many bits BigInteger.toString is quick enough.
+  private static final int SMALL_RADIX = 1 << 11;
+  // base^(2^i) for each base - built as needed.
+  private static final ConcurrentHashMap<Integer, List<BigInteger>> POWERS = new ConcurrentHashMap<>();
+
+  // Write v with at least that many digits.
+  private static void writeRadix(Appendable out, BigInteger v, int base, int digits) throws IOException {
+    if (v.bitLength() <= SMALL_RADIX) {
+      String s = v.toString(base);
+      zeros(out, BigInteger.valueOf(Math.max(0, digits - s.length())));
+      out.append(s);
+      return;
+    }
+    // The biggest power with no more than half the bits.
+    int i = 0;
+    while (power(base, i + 1).bitLength() <= v.bitLength() / 2) {
+      i += 1;
+    }
+    BigInteger[] qr = v.divideAndRemainder(power(base, i));
+    // Top half first - the bottom half has exactly 2^i digits.
+    writeRadix(out, qr[0], base, Math.max(0, digits - (1 << i)));
+    writeRadix(out, qr[1], base, 1 << i);
+  }
+
+  // base^(2^i) - kept for next time.
+  static BigInteger power(int base, int i) {
+    List<BigInteger> powers = POWERS.get(base);
+    if (powers == null) {
+      POWERS.putIfAbsent(base, new ArrayList<>(Arrays.asList(BigInteger.valueOf(base))));
+      powers = POWERS.get(base);
+    }
+    synchronized (powers) {
+      while (powers.size() <= i) {
+        BigInteger last = powers.get(powers.size() - 1);
+        powers.add(last.multiply(last));
+      }
+      return powers.get(i);
     }
-    return c;
   }
   
   // Actual Bits processes that do things.
-  // ToDo: Use ForkJoinPools for some of thois stuff.
 
   public static Bits xor(Bits a, Bits b) {
     // Ultimately use a lambda but for now I will use a loop and ops.
     return apply(a, b, Op.xor);
   }
 
+  public static Bits xor(Bits a, Bits b, ForkJoinPool pool) {
+    return apply(a, b, Op.xor, pool);
+  }
+
   // Possible operations to perform on the bits.
   enum Op {
-    xor {
+    xor(true, true) {
       @Override
       public BigInteger op(BigInteger a, BigInteger b) {
         return a.xor(b);
       }
 
-    },
-    and {
-      @Override
-      public BigInteger op(BigInteger a, BigInteger b) {
-        return a.and(b);
-      }
-
-    },
-    or {
       @Override
-      public BigInteger op(BigInteger a, BigInteger b) {
-        return a.or(b);
+      byte op(byte a, byte b) {
+        return (byte) (a ^ b);
       }
 
-    };
-    // Perform the op.
-
-    abstract BigInteger op(BigInteger a, BigInteger b);
-
-  }
-
-  // Where to pull index, length, value and next from - a or b.
-  private enum Next {
-    A {
       @Override
-      <T extends Sparse<BigInteger, BigInteger>> BigInteger index(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b) {
-        return a.index();
+      long op(long a, long b) {
+        return a ^ b;
       }
 
+    },
+    and(false, false) {
       @Override
-      <T extends Sparse<BigInteger, BigInteger>> BigInteger length(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b) {
-        return a.length();
+      public BigInteger op(BigInteger a, BigInteger b) {
+        return a.and(b);
       }
 
       @Override
-      <T extends Sparse<BigInteger, BigInteger>> BigInteger value(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b) {
-        return a.next().value();
+      byte op(byte a, byte b) {
+        return (byte) (a & b);
       }
 
       @Override
-      Next other() {
-        return Next.B;
+      long op(long a, long b) {
+        return a & b;
       }
 
     },
-    B {
-      @Override
-      <T extends Sparse<BigInteger, BigInteger>> BigInteger index(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b) {
-        return b.index();
-      }
-
+    or(true, true) {
       @Override
-      <T extends Sparse<BigInteger, BigInteger>> BigInteger length(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b) {
-        return b.length();
+      public BigInteger op(BigInteger a, BigInteger b) {
+        return a.or(b);
       }
 
       @Override
-      <T extends Sparse<BigInteger, BigInteger>> BigInteger value(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b) {
-        return b.next().value();
+      byte op(byte a, byte b) {
+        return (byte) (a | b);
       }
 
       @Override
-      Next other() {
-        return Next.A;
+      long op(long a, long b) {
+        return a | b;
       }
 
     };
+    // Do bits of a that have nothing in b against them survive - i.e. is a op 0 == a?
+    final boolean keepA;
+    // Same for b.
+    final boolean keepB;
 
-    // The index of the next value.
-    abstract <T extends Sparse<BigInteger, BigInteger>> BigInteger index(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b);
-    // Its length.
+    Op(boolean keepA, boolean keepB) {
+      this.keepA = keepA;
+      this.keepB = keepB;
+    }
 
-    abstract <T extends Sparse<BigInteger, BigInteger>> BigInteger length(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b);
-    // The next value.
+    // Perform the op.
+    abstract BigInteger op(BigInteger a, BigInteger b);
 
-    abstract <T extends Sparse<BigInteger, BigInteger>> BigInteger value(Sparse.Iterator<T, BigInteger> a, Sparse.Iterator<T, BigInteger> b);
+    // Perform the op on one byte.
+    abstract byte op(byte a, byte b);
 
-    // The other one.
-    abstract Next other();
+    // Perform the op on one word.
+    abstract long op(long a, long b);
 
-    // Determine next.
-    static Next next(Sparse.Iterator<?, BigInteger> a, Sparse.Iterator<?, BigInteger> b) {
-      // If they both exist compare them - if one exists return it - otherwise return null.
-      BigInteger ai = a.index();
-      BigInteger bi = b.index();
-      if (ai == null && bi == null) {
-        // Both null.
-        return null;
-      }
-      if (ai == null) {
-        // A null - return B.
-        return B;
-      }
-      if (bi == null) {
-        // B null - return A.
-        return A;
+  }
+
+  // Start a lazy expression - nothing is done until it is evaluated.
+  public static Expr expr(Bits<Big> bits) {
+    return Expr.of(bits);
+  }
+
+  // Ones from bit from up to (but not including) to - the middle is a Run.
+  public static HugeBits ones(BigInteger from, BigInteger to) {
+    HugeBits.Appender out = new HugeBits.Appender();
+    if (from.compareTo(to) < 0) {
+      BigInteger low = from.shiftRight(3).shiftLeft(3);
+      BigInteger high = to.shiftRight(3).shiftLeft(3);
+      // Part bytes at each end.
+      int bottom = ~0 << from.subtract(low).intValue();
+      int top = ~(~0 << to.subtract(high).intValue());
+      out.skipTo(low);
+      if (low.equals(high)) {
+        out.write((byte) (bottom & top));
+      } else {
+        out.write((byte) bottom);
+        out.fill((byte) 0xFF, high.subtract(low).divide(EIGHT).subtract(BigInteger.ONE));
+        out.write((byte) top);
       }
-      // Neither null - return lowest index with priority A.
-      return a.index().compareTo(b.index()) <= 0 ? A : B;
     }
+    return out.done();
+  }
 
+  // A view of the bits shifted left by n.
+  public static Bits<Big> shiftLeft(Bits<Big> bits, BigInteger n) {
+    return ShiftedBits.shift(bits, n);
+  }
+
+  // A view of the bits shifted right by n - bits off the bottom are lost.
+  public static Bits<Big> shiftRight(Bits<Big> bits, BigInteger n) {
+    return ShiftedBits.shift(bits, n.negate());
   }
 
   // Applies the op to the bits.
   public static Bits apply(Bits<Big> a, Bits<Big> b, Op op) {
-    // Accumulator.
-    HugeBits applied = new HugeBits();
-    // Start both iterators.
-    Sparse.Iterator<Big, BigInteger> ia = a.iterator();
-    Sparse.Iterator<Big, BigInteger> ib = b.iterator();
-    // Which one is next - using the enum above to work itout.
-    for (Next next = Next.next(ia, ib); next != null; next = Next.next(ia, ib)) {
-      // Grab the index, length and value.
-      BigInteger index = next.index(ia, ib);
-      BigInteger length = next.length(ia, ib);
-      BigInteger value = next.value(ia, ib);
-      Next other = next.other();
-      BigInteger otherIndex = other.index(ia, ib);
-      BigInteger otherLength = other.length(ia, ib);
-      // Handle overlaps
-      if (overlaps(index, length, otherIndex, otherLength)) {
-        // Work out the shift.
-        // What do we do if there is overlap between the values?
-        // Case 1: ia == ib - do the op up to the lowest length and move on.
-        // Case 2: ia > ib - consume a up to the start of b and handle like case 1.
-        // Case 3: ib > ia - consume ...
-        switch ( (int)Math.signum(index.compareTo(otherIndex))) {
+    if (a instanceof RoaringBits && b instanceof RoaringBits) {
+      // They can do it chunk by chunk.
+      return RoaringBits.apply((RoaringBits) a, (RoaringBits) b, op);
+    }
+    if (a instanceof PersistentBits && b instanceof PersistentBits) {
+      // Only the regions they share are touched.
+      return PersistentBits.apply((PersistentBits) a, (PersistentBits) b, op);
+    }
+    return apply(a, b, op, HugeBits.BYTES);
+  }
+
+  // Applies the op to the bits giving a HugeBits of that granularity.
+  public static Bits apply(Bits<Big> a, Bits<Big> b, Op op, int granularity) {
+    boolean on = BitsMetrics.on();
+    long start = on ? System.nanoTime() : 0;
+    // Accumulator - normalises as it goes.
+    HugeBits.Appender applied = new HugeBits.Appender(granularity);
+    BigCursor ca = new BigCursor(a.iterator());
+    BigCursor cb = new BigCursor(b.iterator());
+    merge(ca, cb, op, applied);
+    HugeBits done = applied.done();
+    if (on) {
+      BitsMetrics.applied(op.name(), ca.visited() + cb.visited(), done.size(), System.nanoTime() - start);
+    }
+    return done;
+  }
+
+  /*
+   * Applies the op to the bits using the pool.
+   *
+   * The index space is cut into ranges at places where neither has a Big
+   * across the cut. Each range is merged separately and as the ranges do
+   * not overlap the results are just joined end to end.
+   */
+  public static Bits apply(Bits<Big> a, Bits<Big> b, Op op, ForkJoinPool pool) {
+    // Past the top of both.
+    BigInteger to = a.length().max(b.length()).add(EIGHT);
+    boolean on = BitsMetrics.on();
+    long start = on ? System.nanoTime() : 0;
+    AtomicLong visited = on ? new AtomicLong() : null;
+    HugeBits done = HugeBits.concat(pool.invoke(new ApplyTask(a, b, op, BigInteger.ZERO, to, depth(pool), visited, null)));
+    if (on) {
+      BitsMetrics.applied(op.name(), visited.get(), done.size(), System.nanoTime() - start);
+    }
+    return done;
+  }
+
+  /*
+   * a + b using the pool - cut into ranges as apply does.
+   *
+   * A carry out of the top of a range lands on or after the cut so each
+   * range just notes where its carry goes. Once the ranges are joined up
+   * the carries are added in - each only disturbs the Bigs it runs into.
+   *
+   * There is no parallel subtract. A borrow out of a range would have to
+   * turn every zero above the cut into a one up to the next set bit and
+   * take one from there - rewriting the bottom of the ranges above rather
+   * than just adding a bit to them.
+   */
+  public static Bits add(Bits<Big> a, Bits<Big> b, ForkJoinPool pool) {
+    // Past the top of both.
+    BigInteger to = a.length().max(b.length()).add(EIGHT);
+    Queue<BigInteger> carries = new ConcurrentLinkedQueue<>();
+    HugeBits done = HugeBits.concat(pool.invoke(new ApplyTask(a, b, null, BigInteger.ZERO, to, depth(pool), null, carries)));
+    for (BigInteger carry : carries) {
+      done.add(new Big(carry, BigInteger.ONE));
+    }
+    return done;
+  }
+
+  // How many times to split - a few ranges for each thread so they balance out.
+  private static int depth(ForkJoinPool pool) {
+    return 32 - Integer.numberOfLeadingZeros(4 * pool.getParallelism() - 1);
+  }
+
+  // Somewhere near the middle of from to to that none of them has a Big across - null if nowhere.
+  @SafeVarargs
+  private static BigInteger cut(BigInteger from, BigInteger to, Bits<Big>... bits) {
+    // Half way - on a byte.
+    BigInteger mid = from.add(to).shiftRight(4).shiftLeft(3);
+    // Move down until none is straddling it.
+    for (BigInteger was = null; mid != null && !mid.equals(was);) {
+      was = mid;
+      for (int i = 0; i < bits.length && mid != null; i++) {
+        mid = bits[i].boundary(mid);
+      }
+    }
+    return mid != null && mid.compareTo(from) > 0 ? mid : null;
+  }
+
+  // Applies the op - or adds if there is none - to one range, splitting it further if allowed.
+  private static class ApplyTask extends RecursiveTask<List<HugeBits>> {
+    private static final long serialVersionUID = 1L;
+    private final Bits<Big> a;
+    private final Bits<Big> b;
+    private final Op op;
+    private final BigInteger from;
+    private final BigInteger to;
+    // How many more times we may split.
+    private final int depth;
+    // Bigs read - null if nobody wants to know.
+    private final AtomicLong visited;
+    // Where carries out of the top of a range land - when adding.
+    private final Queue<BigInteger> carries;
+
+    ApplyTask(Bits<Big> a, Bits<Big> b, Op op, BigInteger from, BigInteger to, int depth, AtomicLong visited, Queue<BigInteger> carries) {
+      this.a = a;
+      this.b = b;
+      this.op = op;
+      this.from = from;
+      this.to = to;
+      this.depth = depth;
+      this.visited = visited;
+      this.carries = carries;
+    }
+
+    @Override
+    protected List<HugeBits> compute() {
+      BigInteger mid = depth > 0 ? cut(from, to, a, b) : null;
+      if (mid == null) {
+        // Do it here.
+        HugeBits.Appender out = new HugeBits.Appender();
+        BigCursor ca = new BigCursor(a.iterator(from, to));
+        BigCursor cb = new BigCursor(b.iterator(from, to));
+        if (op != null) {
+          merge(ca, cb, op, out);
+        } else {
+          BigInteger carryAt = arithmetic(ca, cb, false, out);
+          if (carryAt != null) {
+            carries.add(carryAt);
+          }
+        }
+        if (visited != null) {
+          visited.addAndGet(ca.visited() + cb.visited());
+        }
+        List<HugeBits> done = new ArrayList<>();
+        done.add(out.done());
+        return done;
+      }
+      ApplyTask low = new ApplyTask(a, b, op, from, mid, depth - 1, visited, carries);
+      ApplyTask high = new ApplyTask(a, b, op, mid, to, depth - 1, visited, carries);
+      low.fork();
+      List<HugeBits> highParts = high.compute();
+      List<HugeBits> parts = low.join();
+      parts.addAll(highParts);
+      return parts;
+    }
+
+  }
+
+  /*
+   * One pass over both streams in index order.
+   *
+   * Overlapping Bigs are cut at each other's boundaries so the op only
+   * sees the intersection. The parts with no counterpart go straight
+   * through (or are dropped if the op would zero them anyway).
+   *
+   * A Run is never built. Against another Run the op is done once for the
+   * whole overlap and against anything else it only costs the other's bytes.
+   *
+   * Parts that are dropped are skipped through the iterator so an and of
+   * a small one with a huge one only looks near the small one's Bigs.
+   */
+  static void merge(BigCursor a, BigCursor b, Op op, HugeBits.Appender out) {
+    for (boolean moreA = a.hasData(), moreB = b.hasData(); moreA || moreB; moreA = a.hasData(), moreB = b.hasData()) {
+      if (!moreB) {
+        if (!op.keepA) {
+          // Nothing more can come out.
+          break;
+        }
+        // Only a left.
+        pass(a, a.remaining(), op.keepA, out);
+      } else if (!moreA) {
+        if (!op.keepB) {
+          break;
+        }
+        // Only b left.
+        pass(b, b.remaining(), op.keepB, out);
+      } else {
+        switch (a.compareTo(b)) {
           case -1:
-            break;
-          case 0:
+            // a starts first - take it up to where b starts.
+            if (op.keepA) {
+              pass(a, a.remainingBelow(b), op.keepA, out);
+            } else {
+              // Dropped anyway - jump straight there.
+              a.skipTo(b);
+            }
             break;
           case 1:
+            // b starts first - take it up to where a starts.
+            if (op.keepB) {
+              pass(b, b.remainingBelow(a), op.keepB, out);
+            } else {
+              b.skipTo(a);
+            }
             break;
-          
+          default:
+            // Lined up - op them until one runs out.
+            int n = Math.min(a.remaining(), b.remaining());
+            out.skipTo(a);
+            if (a.isRun() && b.isRun()) {
+              // Runs make a run.
+              out.fill(op.op(a.fill(), b.fill()), BigInteger.valueOf(n));
+            } else {
+              // At most as far as the end of the one that is not a Run - a word at a time.
+              int i = 0;
+              for (; i + 8 <= n; i += 8) {
+                out.write(op.op(a.getLong(i), b.getLong(i)));
+              }
+              for (; i < n; i++) {
+                out.write(op.op(a.get(i), b.get(i)));
+              }
+            }
+            a.skip(n);
+            b.skip(n);
         }
-        // Perform the op.
-        applied.add(new Big(index, op.op(value, other.value(ia, ib))));
-      } else {
-        // No counterpart - add it directly.
-        applied.add(new Big(index, value));
       }
     }
-    return applied;
   }
 
- 
-  private static boolean overlaps(BigInteger aIndex, BigInteger aLength, BigInteger bIndex, BigInteger bLength) {
-    // Any missing?
-    if (aIndex == null || aLength == null || bIndex == null || bLength == null) {
-      return false;
+  // Arithmetic.
+
+  public static Bits add(Bits<Big> a, Bits<Big> b) {
+    return arithmetic(a, b, false);
+  }
+
+  // a - b - b must not be bigger than a.
+  public static Bits subtract(Bits<Big> a, Bits<Big> b) {
+    return arithmetic(a, b, true);
+  }
+
+  /*
+   * Add or subtract in one pass in index order - just like merge.
+   *
+   * The carry (or borrow) is held over from one piece to the next. If the
+   * next piece does not start where the carry lands it has to cross the gap
+   * on its own. A carry just drops into the gap. A borrow has to turn the
+   * whole gap into ones until it reaches something to borrow from.
+   */
+  private static Bits arithmetic(Bits<Big> a, Bits<Big> b, boolean subtract) {
+    HugeBits.Appender out = new HugeBits.Appender();
+    BigInteger carryAt = arithmetic(new BigCursor(a.iterator()), new BigCursor(b.iterator()), subtract, out);
+    if (carryAt != null) {
+      if (subtract) {
+        throw new ArithmeticException("Negative result - subtracting a bigger number.");
+      }
+      // Carry off the top.
+      cross(out, carryAt, null, false);
     }
-    // Wholly below?
-    if (aIndex.add(aLength).compareTo(bIndex) <= 0) {
-      return false;
+    return out.done();
+  }
+
+  // The pass itself - returns where the carry (or borrow) off the top lands or null if there is none.
+  static BigInteger arithmetic(BigCursor ca, BigCursor cb, boolean subtract, HugeBits.Appender out) {
+    // The carry and where it lands.
+    int carry = 0;
+    BigInteger carryAt = null;
+    for (boolean moreA = ca.hasData(), moreB = cb.hasData(); moreA || moreB; moreA = ca.hasData(), moreB = cb.hasData()) {
+      // Which of them are in the next piece and how long it is.
+      boolean inA = moreA && (!moreB || ca.start().compareTo(cb.start()) <= 0);
+      boolean inB = moreB && (!moreA || cb.start().compareTo(ca.start()) <= 0);
+      BigInteger start = inA ? ca.start() : cb.start();
+      int n = inA && inB ? Math.min(ca.remaining(), cb.remaining())
+              : inA ? (moreB ? ca.remainingBelow(cb.start()) : ca.remaining())
+              : (moreA ? cb.remainingBelow(ca.start()) : cb.remaining());
+      if (carry != 0 && !start.equals(carryAt)) {
+        // A gap.
+        carry = cross(out, carryAt, start, subtract);
+      }
+      out.skipTo(start);
+      // Nothing but Runs - the same bytes every time.
+      boolean runs = (!inA || ca.isRun()) && (!inB || cb.isRun());
+      for (int i = 0; i < n; i++) {
+        int x = inA ? ca.get(i) & 0xFF : 0;
+        int y = inB ? cb.get(i) & 0xFF : 0;
+        int v = subtract ? x - y - carry : x + y + carry;
+        out.write((byte) v);
+        // Top bit set means a borrow.
+        int was = carry;
+        carry = subtract ? v >>> 31 : v >>> 8;
+        if (runs && carry == was) {
+          // So it will be the same all the way.
+          out.fill((byte) v, BigInteger.valueOf(n - 1 - i));
+          break;
+        }
+      }
+      if (carry != 0) {
+        carryAt = start.add(BigInteger.valueOf(n).multiply(EIGHT));
+      }
+      if (inA) {
+        ca.skip(n);
+      }
+      if (inB) {
+        cb.skip(n);
+      }
+    }
+    return carry != 0 ? carryAt : null;
+  }
+
+  /*
+   * Multiply keeping sparse numbers sparse.
+   *
+   * The product is the sum of the products of every pair of Bigs, each
+   * placed at the sum of their indexes. The products are gathered in a
+   * Builder which sorts them once and adds up any that overlap. To keep
+   * the memory down a Builder only takes a batch of products - batches
+   * are added up in pairs (like a binary counter) so each Big is only
+   * carried through log(batches) adds.
+   *
+   * The Big values themselves are multiplied by BigInteger which uses
+   * Karatsuba and Toom-Cook once they are big enough (Java 8 on).
+   *
+   * If the product looks like it will be dense anyway it is quicker to
+   * multiply the whole numbers in one go.
+   */
+  public static Bits multiply(Bits<Big> a, Bits<Big> b) {
+    if (dense(a, b)) {
+      return new HugeBits(new Big(toBigInteger(a).multiply(toBigInteger(b))));
+    }
+    // levels[k] is the sum of 2^k batches - or null.
+    List<Bits<Big>> levels = new ArrayList<>();
+    HugeBits.Builder batch = new HugeBits.Builder();
+    int size = 0;
+    for (Sparse.Iterator<Big, BigInteger> ia = a.iterator(); ia.hasNext();) {
+      Big x = ia.next();
+      for (Sparse.Iterator<Big, BigInteger> ib = b.iterator(); ib.hasNext();) {
+        Big y = ib.next();
+        batch.add(new Big(x.index().add(y.index()), x.value().multiply(y.value())));
+        if (++size == BATCH) {
+          carry(levels, batch.build());
+          size = 0;
+        }
+      }
+    }
+    carry(levels, batch.build());
+    // Add up what is left.
+    Bits<Big> product = new HugeBits();
+    for (Bits<Big> level : levels) {
+      if (level != null) {
+        product = add(product, level);
+      }
+    }
+    return product;
+  }
+
+  /*
+   * a * b using the pool.
+   *
+   * a is cut into ranges and each is multiplied by all of b on its own.
+   * The partial products overlap so they are added up in pairs as the
+   * ranges come back together.
+   */
+  public static Bits multiply(Bits<Big> a, Bits<Big> b, ForkJoinPool pool) {
+    return pool.invoke(new MultiplyTask(a, b, BigInteger.ZERO, a.length().add(EIGHT), depth(pool)));
+  }
+
+  // Multiplies one range of a by b - splitting it further if allowed.
+  private static class MultiplyTask extends RecursiveTask<Bits<Big>> {
+    private static final long serialVersionUID = 1L;
+    private final Bits<Big> a;
+    private final Bits<Big> b;
+    private final BigInteger from;
+    private final BigInteger to;
+    // How many more times we may split.
+    private final int depth;
+
+    MultiplyTask(Bits<Big> a, Bits<Big> b, BigInteger from, BigInteger to, int depth) {
+      this.a = a;
+      this.b = b;
+      this.from = from;
+      this.to = to;
+      this.depth = depth;
+    }
+
+    @Override
+    protected Bits<Big> compute() {
+      BigInteger mid = depth > 0 ? cut(from, to, a) : null;
+      if (mid == null) {
+        // Do it here - on just our part of a.
+        HugeBits.Appender part = new HugeBits.Appender();
+        for (Sparse.Iterator<Big, BigInteger> i = a.iterator(from, to); i.hasNext();) {
+          part.write(i.next());
+        }
+        return multiply(part.done(), b);
+      }
+      MultiplyTask low = new MultiplyTask(a, b, from, mid, depth - 1);
+      MultiplyTask high = new MultiplyTask(a, b, mid, to, depth - 1);
+      low.fork();
+      Bits<Big> highProduct = high.compute();
+      return add(low.join(), highProduct);
     }
-    // Wholly above?
-    if (bIndex.add(bLength).compareTo(aIndex) <= 0) {
+
+  }
+
+  // Products in each batch.
+  private static final int BATCH = 1 << 20;
+
+  // Add a batch into the binary counter.
+  private static void carry(List<Bits<Big>> levels, Bits<Big> sum) {
+    int k = 0;
+    for (; k < levels.size() && levels.get(k) != null; k++) {
+      sum = add(levels.get(k), sum);
+      levels.set(k, null);
+    }
+    if (k == levels.size()) {
+      levels.add(sum);
+    } else {
+      levels.set(k, sum);
+    }
+  }
+
+  // Products that would fill more than this fraction of their bits go dense.
+  private static final double DENSE = 0.25;
+
+  // Is the product going to be dense enough to do it all in one?
+  private static boolean dense(Bits<Big> a, Bits<Big> b) {
+    BigInteger span = a.length().add(b.length());
+    if (span.bitLength() > 31) {
+      // Too big for a BigInteger anyway.
       return false;
     }
-    // There is some intersection.
-    return true;
+    // Each pair makes about as many bits as the two of them have between them.
+    long[] na = count(a);
+    long[] nb = count(b);
+    double bits = (double) na[0] * nb[1] + (double) nb[0] * na[1];
+    return bits >= DENSE * span.doubleValue();
+  }
+
+  // How many Bigs and how many bits in them.
+  private static long[] count(Bits<Big> bits) {
+    long[] count = new long[2];
+    for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+      count[0] += 1;
+      count[1] += i.next().length().longValue();
+    }
+    return count;
+  }
+
+  // The whole thing as one BigInteger - it must fit.
+  public static <T extends Sparse<BigInteger, BigInteger>> BigInteger toBigInteger(Bits<T> bits) {
+    BigInteger length = bits.length();
+    if (length.bitLength() > 31) {
+      throw new ArithmeticException("Too big for a BigInteger: " + length + " bits.");
+    }
+    // Most significant first.
+    byte[] be = new byte[(length.intValue() + 7) / 8];
+    for (Sparse.Iterator<T, BigInteger> i = bits.iterator(); i.hasNext();) {
+      T next = i.next();
+      int index = next.index().intValue();
+      // Line it up on a byte - it may share that byte with the one before.
+      byte[] its = next.value().shiftLeft(index % 8).toByteArray();
+      int at = be.length - 1 - index / 8;
+      for (int j = 0; j < its.length && at - j >= 0; j++) {
+        be[at - j] |= its[its.length - 1 - j];
+      }
+    }
+    return new BigInteger(1, be);
+  }
+
+  // Take a carry across a gap - returns what is left of it.
+  private static int cross(HugeBits.Appender out, BigInteger from, BigInteger to, boolean subtract) {
+    out.skipTo(from);
+    if (!subtract) {
+      // Carry just drops in.
+      out.write((byte) 1);
+      return 0;
+    }
+    // The whole gap becomes ones and the borrow carries on.
+    out.fill((byte) 0xFF, to.subtract(from).divide(EIGHT));
+    return 1;
+  }
+
+  // Pass n bytes with no counterpart through - or drop them.
+  private static void pass(BigCursor c, int n, boolean keep, HugeBits.Appender out) {
+    if (keep) {
+      out.skipTo(c);
+      if (c.isRun()) {
+        out.fill(c.fill(), BigInteger.valueOf(n));
+      } else {
+        int i = 0;
+        for (; i + 8 <= n; i += 8) {
+          out.write(c.getLong(i));
+        }
+        for (; i < n; i++) {
+          out.write(c.get(i));
+        }
+      }
+    }
+    c.skip(n);
   }
 
   public static void main(String[] args) {
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+/**
+ * Told what the Bits operations are up to - see BitsMetrics.
+ *
+ * Called on whatever thread did the work so keep it quick and thread safe.
+ *
+ * @author OldCurmudgeon.
+ */
+public interface BitsListener {
+
+  /**
+   * An apply has finished.
+   *
+   * @param op The op - xor, and or or.
+   * @param visited How many Bigs were read from both sides.
+   * @param produced How many Bigs came out.
+   * @param nanos How long it took.
+   */
+  public void applied(String op, long visited, long produced, long nanos);
+
+  /**
+   * An add has normalised the region around the new Big.
+   *
+   * @param joined How many Bigs already there were joined up with it.
+   * @param pieces How many Bigs it was cut back into.
+   */
+  public void normalised(int joined, int pieces);
+
+  /**
+   * Bytes have been copied out of a BigInteger.
+   *
+   * @param bytes How many bytes were allocated doing it.
+   */
+  public void allocated(long bytes);
+
+}
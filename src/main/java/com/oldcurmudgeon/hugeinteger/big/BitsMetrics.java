@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.util.Arrays;
+
+/**
+ * Where the BitsListeners are.
+ *
+ * With none added the instrumented code just checks on() - one read of
+ * a field that is null - and does nothing else. No clock, nothing
+ * allocated. The BigCursors count the Bigs they take either way - it is
+ * one add on a field per Big.
+ *
+ * BitsStats is a listener that keeps totals and publishes them over JMX.
+ *
+ * @author OldCurmudgeon.
+ */
+public final class BitsMetrics {
+  // Null when there are none - copied on change.
+  private static volatile BitsListener[] listeners = null;
+
+  private BitsMetrics() {
+  }
+
+  public static synchronized void addListener(BitsListener listener) {
+    BitsListener[] l = listeners;
+    l = l == null ? new BitsListener[1] : Arrays.copyOf(l, l.length + 1);
+    l[l.length - 1] = listener;
+    listeners = l;
+  }
+
+  public static synchronized void removeListener(BitsListener listener) {
+    BitsListener[] l = listeners;
+    if (l != null) {
+      for (int i = 0; i < l.length; i++) {
+        if (l[i] == listener) {
+          BitsListener[] less = new BitsListener[l.length - 1];
+          System.arraycopy(l, 0, less, 0, i);
+          System.arraycopy(l, i + 1, less, i, less.length - i);
+          listeners = less.length == 0 ? null : less;
+          return;
+        }
+      }
+    }
+  }
+
+  // Is anyone listening?
+  static boolean on() {
+    return listeners != null;
+  }
+
+  static void applied(String op, long visited, long produced, long nanos) {
+    BitsListener[] l = listeners;
+    if (l != null) {
+      for (BitsListener listener : l) {
+        listener.applied(op, visited, produced, nanos);
+      }
+    }
+  }
+
+  static void normalised(int joined, int pieces) {
+    BitsListener[] l = listeners;
+    if (l != null) {
+      for (BitsListener listener : l) {
+        listener.normalised(joined, pieces);
+      }
+    }
+  }
+
+  static void allocated(long bytes) {
+    BitsListener[] l = listeners;
+    if (l != null) {
+      for (BitsListener listener : l) {
+        listener.allocated(bytes);
+      }
+    }
+  }
+
+}
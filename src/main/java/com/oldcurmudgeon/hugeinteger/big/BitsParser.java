@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads numbers as text into HugeBits.
+ *
+ * Digits are read a chunk at a time - whitespace is ignored.
+ *
+ * For a power of two base each digit is just some bits so every chunk can
+ * be parsed on its own, in parallel if there is a pool, straight into
+ * Bigs with runs of zeros skipped. Where a chunk's bits go is not known
+ * until we know how many digits come after it so they are parsed as if
+ * they were at the bottom and moved into place as they are joined up in
+ * one pass at the end. A full chunk is a whole number of bytes so they only
+ * move by whole bytes against each other - but unless the digits left at
+ * the bottom come to a whole number of bytes too every byte above them has
+ * to be realigned on the way in.
+ *
+ * Any other base cannot be split into bits. Each chunk is converted on its
+ * own and they are joined up like a binary counter - two parts of the same
+ * number of chunks are joined by multiplying the top one by a power of the
+ * base - so only a few parts are kept and the text is only held for the
+ * chunks still being converted. The result is one BigInteger so it can be
+ * no bigger than a BigInteger can.
+ *
+ * @author OldCurmudgeon.
+ */
+public class BitsParser {
+  // Digits in a chunk - a multiple of 8 so every full chunk is a whole number of bytes.
+  static final int CHUNK = 1 << 20;
+  private static final int LOG_CHUNK = Integer.numberOfTrailingZeros(CHUNK);
+  // Below this many digits BigInteger is quick enough.
+  private static final int SMALL = 1 << 9;
+
+  private BitsParser() {
+  }
+
+  public static HugeBits parse(CharSequence s, int base) {
+    try {
+      return parse(new StringReader(s.toString()), base, null);
+    } catch (IOException e) {
+      // StringReader does not do that.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static HugeBits parse(Reader in, int base) throws IOException {
+    return parse(in, base, null);
+  }
+
+  public static HugeBits parse(ReadableByteChannel in, int base, ForkJoinPool pool) throws IOException {
+    return parse(Channels.newReader(in, "US-ASCII"), base, pool);
+  }
+
+  // Parse it - using the pool if there is one.
+  public static HugeBits parse(Reader in, int base, ForkJoinPool pool) throws IOException {
+    if (base < Character.MIN_RADIX || base > Character.MAX_RADIX) {
+      throw new IllegalArgumentException("Bad base " + base);
+    }
+    return Integer.bitCount(base) == 1 ? parseBinary(in, base, pool) : parseRadix(in, base, pool);
+  }
+
+  // A power of two base.
+  private static HugeBits parseBinary(Reader in, int base, ForkJoinPool pool) throws IOException {
+    int k = Integer.numberOfTrailingZeros(base);
+    // How many chunks to have on the go at once.
+    int ahead = pool == null ? 1 : 2 * pool.getParallelism();
+    // Each holds its digits until it is joined so let go of them then.
+    ArrayDeque<ForkJoinTask<HugeBits>> running = new ArrayDeque<>();
+    List<HugeBits> parsed = new ArrayList<>();
+    Digits digits = new Digits(in, base);
+    for (char[] chunk = new char[CHUNK]; digits.read(chunk) == CHUNK; chunk = new char[CHUNK]) {
+      ChunkTask task = new ChunkTask(chunk, CHUNK, base, k);
+      if (pool == null) {
+        // Just do it now.
+        parsed.add(task.invoke());
+      } else {
+        running.add(pool.submit(task));
+        // Keep up.
+        while (running.size() >= ahead) {
+          parsed.add(running.poll().join());
+        }
+      }
+    }
+    while (!running.isEmpty()) {
+      parsed.add(running.poll().join());
+    }
+    // What is left is the bottom.
+    int left = digits.last;
+    if (left == 0 && parsed.isEmpty()) {
+      throw new NumberFormatException("No digits");
+    }
+    ShiftedBits.Realigner out = new ShiftedBits.Realigner();
+    if (left > 0) {
+      write(out, new ChunkTask(digits.chunk, left, base, k).invoke(), BigInteger.ZERO);
+    }
+    // Full chunks from the bottom up - over it.
+    BigInteger size = BigInteger.valueOf((long) CHUNK * k);
+    BigInteger offset = BigInteger.valueOf((long) left * k);
+    for (int i = parsed.size() - 1; i >= 0; i--) {
+      write(out, parsed.get(i), offset);
+      // Done with it.
+      parsed.set(i, null);
+      offset = offset.add(size);
+    }
+    return out.done();
+  }
+
+  private static void write(ShiftedBits.Realigner out, HugeBits chunk, BigInteger offset) {
+    for (Sparse.Iterator<Big, BigInteger> it = chunk.iterator(); it.hasNext();) {
+      out.write(it.next(), offset);
+    }
+  }
+
+  // Parse one chunk as if it is the bottom.
+  private static class ChunkTask extends RecursiveTask<HugeBits> {
+    private static final long serialVersionUID = 1L;
+    private final char[] digits;
+    private final int n;
+    private final int base;
+    private final int k;
+
+    ChunkTask(char[] digits, int n, int base, int k) {
+      this.digits = digits;
+      this.n = n;
+      this.base = base;
+      this.k = k;
+    }
+
+    @Override
+    protected HugeBits compute() {
+      HugeBits.Appender out = new HugeBits.Appender();
+      // Bits not yet written - there are always fewer than 8.
+      int bits = 0;
+      int count = 0;
+      // From the bottom up.
+      for (int i = n - 1; i >= 0; i--) {
+        if (digits[i] == '0') {
+          // A run of zeros.
+          int m = 1;
+          while (i - m >= 0 && digits[i - m] == '0') {
+            m += 1;
+          }
+          i -= m - 1;
+          long zeros = count + (long) m * k;
+          if (zeros >= 8) {
+            out.write((byte) bits);
+            zeros -= 8;
+            out.skip(zeros / 8);
+            bits = 0;
+          }
+          count = (int) (zeros % 8);
+        } else {
+          bits |= Character.digit(digits[i], base) << count;
+          count += k;
+          while (count >= 8) {
+            out.write((byte) bits);
+            bits >>>= 8;
+            count -= 8;
+          }
+        }
+      }
+      if (count > 0) {
+        out.write((byte) bits);
+      }
+      return out.done();
+    }
+
+  }
+
+  // Any other base.
+  private static HugeBits parseRadix(Reader in, int base, ForkJoinPool pool) throws IOException {
+    int ahead = pool == null ? 1 : 2 * pool.getParallelism();
+    ArrayDeque<ForkJoinTask<BigInteger>> running = new ArrayDeque<>();
+    // Most significant first - each of 2^chunks[i] chunks and more than the one after it.
+    List<BigInteger> parts = new ArrayList<>();
+    List<Integer> chunks = new ArrayList<>();
+    Digits digits = new Digits(in, base);
+    for (char[] chunk = new char[CHUNK]; digits.read(chunk) == CHUNK; chunk = new char[CHUNK]) {
+      RadixTask task = new RadixTask(CharBuffer.wrap(chunk), 0, CHUNK, base);
+      if (pool == null) {
+        join(parts, chunks, task.invoke(), base);
+      } else {
+        running.add(pool.submit(task));
+        while (running.size() >= ahead) {
+          join(parts, chunks, running.poll().join(), base);
+        }
+      }
+    }
+    while (!running.isEmpty()) {
+      join(parts, chunks, running.poll().join(), base);
+    }
+    int left = digits.last;
+    if (left == 0 && parts.isEmpty()) {
+      throw new NumberFormatException("No digits");
+    }
+    // All of them from the top down.
+    BigInteger value = BigInteger.ZERO;
+    for (int i = 0; i < parts.size(); i++) {
+      value = value.multiply(Bits.power(base, LOG_CHUNK + chunks.get(i))).add(parts.get(i));
+    }
+    if (left > 0) {
+      RadixTask bottom = new RadixTask(CharBuffer.wrap(digits.chunk, 0, left), 0, left, base);
+      value = value.multiply(BigInteger.valueOf(base).pow(left)).add(pool == null ? bottom.invoke() : pool.invoke(bottom));
+    }
+    return new HugeBits(new Big(value));
+  }
+
+  // Add the next chunk on the bottom - joining up parts of the same size.
+  private static void join(List<BigInteger> parts, List<Integer> chunks, BigInteger next, int base) {
+    int size = 0;
+    for (int last = parts.size() - 1; last >= 0 && chunks.get(last) == size; last--) {
+      next = parts.remove(last).multiply(Bits.power(base, LOG_CHUNK + size)).add(next);
+      chunks.remove(last);
+      size += 1;
+    }
+    parts.add(next);
+    chunks.add(size);
+  }
+
+  // Convert some digits - halving until they are small.
+  private static class RadixTask extends RecursiveTask<BigInteger> {
+    private static final long serialVersionUID = 1L;
+    private final CharSequence digits;
+    private final int from;
+    private final int to;
+    private final int base;
+
+    RadixTask(CharSequence digits, int from, int to, int base) {
+      this.digits = digits;
+      this.from = from;
+      this.to = to;
+      this.base = base;
+    }
+
+    @Override
+    protected BigInteger compute() {
+      int n = to - from;
+      if (n <= SMALL) {
+        return new BigInteger(digits.subSequence(from, to).toString(), base);
+      }
+      // The bottom part gets 2^i digits so its power is cached.
+      int i = 31 - Integer.numberOfLeadingZeros(n - 1);
+      int mid = to - (1 << i);
+      RadixTask high = new RadixTask(digits, from, mid, base);
+      RadixTask low = new RadixTask(digits, mid, to, base);
+      if (inForkJoinPool()) {
+        high.fork();
+        BigInteger l = low.compute();
+        return high.join().multiply(Bits.power(base, i)).add(l);
+      }
+      return high.compute().multiply(Bits.power(base, i)).add(low.compute());
+    }
+
+  }
+
+  // Pulls just the digits out of the text.
+  private static class Digits {
+    private final Reader in;
+    private final int base;
+    private final char[] buf = new char[1 << 16];
+    private int pos = 0;
+    private int end = 0;
+    // Where the last read went and how many it got.
+    char[] chunk;
+    int last;
+
+    Digits(Reader in, int base) {
+      this.in = in;
+      this.base = base;
+    }
+
+    // Fill it up as far as we can - returns how many.
+    int read(char[] into) throws IOException {
+      int n = 0;
+      while (n < into.length) {
+        if (pos == end) {
+          end = in.read(buf);
+          pos = 0;
+          if (end < 0) {
+            end = 0;
+            break;
+          }
+        }
+        char c = buf[pos++];
+        if (Character.digit(c, base) >= 0) {
+          into[n++] = c;
+        } else if (!Character.isWhitespace(c)) {
+          throw new NumberFormatException("Not a base " + base + " digit: '" + c + "'");
+        }
+      }
+      chunk = into;
+      last = n;
+      return n;
+    }
+
+  }
+
+}
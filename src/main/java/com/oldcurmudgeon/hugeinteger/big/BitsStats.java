@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Totals of everything a BitsListener hears about - published over JMX.
+ *
+ * BitsStats.register() is all it takes - it starts listening and shows
+ * up as com.oldcurmudgeon.hugeinteger:type=BitsStats.
+ *
+ * @author OldCurmudgeon.
+ */
+public class BitsStats implements BitsListener, BitsStatsMXBean {
+  public static final String NAME = "com.oldcurmudgeon.hugeinteger:type=BitsStats";
+  // Up to 2^39 microseconds is nearly a week.
+  static final int BUCKETS = 40;
+  private final AtomicLong applies = new AtomicLong();
+  private final AtomicLong visited = new AtomicLong();
+  private final AtomicLong produced = new AtomicLong();
+  private final AtomicLong normalises = new AtomicLong();
+  private final AtomicLong joined = new AtomicLong();
+  private final AtomicLong pieces = new AtomicLong();
+  private final AtomicLong allocated = new AtomicLong();
+  // Latencies for each op.
+  private final ConcurrentMap<String, AtomicLongArray> latencies = new ConcurrentHashMap<>();
+
+  // Start listening and publish it.
+  public static BitsStats register() throws JMException {
+    BitsStats stats = new BitsStats();
+    ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(NAME));
+    BitsMetrics.addListener(stats);
+    return stats;
+  }
+
+  // Stop listening and take it down.
+  public void unregister() throws JMException {
+    BitsMetrics.removeListener(this);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(NAME);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Override
+  public void applied(String op, long visited, long produced, long nanos) {
+    applies.incrementAndGet();
+    this.visited.addAndGet(visited);
+    this.produced.addAndGet(produced);
+    AtomicLongArray histogram = latencies.get(op);
+    if (histogram == null) {
+      latencies.putIfAbsent(op, new AtomicLongArray(BUCKETS));
+      histogram = latencies.get(op);
+    }
+    histogram.incrementAndGet(bucket(nanos));
+  }
+
+  // Which bucket - by the power of two of the microseconds.
+  static int bucket(long nanos) {
+    long micros = nanos / 1000;
+    return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+  }
+
+  @Override
+  public void normalised(int joined, int pieces) {
+    normalises.incrementAndGet();
+    this.joined.addAndGet(joined);
+    this.pieces.addAndGet(pieces);
+  }
+
+  @Override
+  public void allocated(long bytes) {
+    allocated.addAndGet(bytes);
+  }
+
+  @Override
+  public long getApplies() {
+    return applies.get();
+  }
+
+  @Override
+  public long getSegmentsVisited() {
+    return visited.get();
+  }
+
+  @Override
+  public long getSegmentsProduced() {
+    return produced.get();
+  }
+
+  @Override
+  public long getNormalises() {
+    return normalises.get();
+  }
+
+  @Override
+  public long getNormaliseJoined() {
+    return joined.get();
+  }
+
+  @Override
+  public long getNormalisePieces() {
+    return pieces.get();
+  }
+
+  @Override
+  public long getBytesAllocated() {
+    return allocated.get();
+  }
+
+  @Override
+  public Map<String, long[]> getLatencyHistograms() {
+    Map<String, long[]> all = new TreeMap<>();
+    for (Map.Entry<String, AtomicLongArray> e : latencies.entrySet()) {
+      long[] counts = new long[BUCKETS];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = e.getValue().get(i);
+      }
+      all.put(e.getKey(), counts);
+    }
+    return all;
+  }
+
+  @Override
+  public void reset() {
+    for (AtomicLong a : new AtomicLong[]{applies, visited, produced, normalises, joined, pieces, allocated}) {
+      a.set(0);
+    }
+    latencies.clear();
+  }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.util.Map;
+
+/**
+ * What BitsStats shows over JMX.
+ *
+ * @author OldCurmudgeon.
+ */
+public interface BitsStatsMXBean {
+
+  public long getApplies();
+
+  public long getSegmentsVisited();
+
+  public long getSegmentsProduced();
+
+  public long getNormalises();
+
+  public long getNormaliseJoined();
+
+  public long getNormalisePieces();
+
+  public long getBytesAllocated();
+
+  /**
+   * Apply latencies for each op.
+   *
+   * Entry i counts the applies that took from 2^(i-1) up to 2^i
+   * microseconds - entry 0 is those under a microsecond.
+   */
+  public Map<String, long[]> getLatencyHistograms();
+
+  public void reset();
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary stream of Bits.
+ *
+ * The stream starts with "HBIT", a version byte and a flags byte. Then
+ * come blocks of Bigs, each with a header of:
+ *
+ * - how many Bigs (zero marks the end of the stream),
+ * - the byte index of the first,
+ * - the byte index just past the last, relative to the first,
+ * - how many bytes of Bigs follow.
+ *
+ * Each Big is then the gap in bytes since the end of the one before (or
+ * the start of the block), twice the length of its value in bytes and the
+ * value least significant byte first. A Run has one added to twice its
+ * length and is followed by just its fill byte. Version 1 streams have no
+ * Runs and the plain length. All numbers are unsigned varints - seven
+ * bits at a time, low first, with the top bit set on all but the last.
+ * If the checksum flag is set each block ends with the CRC32 of its Bigs.
+ *
+ * Only one block is ever held at a time, either way. A reader looking for
+ * a range of indexes skips whole blocks without looking inside them.
+ *
+ * @author OldCurmudgeon.
+ */
+public class BitsStream {
+  private static final byte[] MAGIC = {'H', 'B', 'I', 'T'};
+  static final int VERSION = 2;
+  // Flags.
+  private static final int CHECKSUMS = 1;
+  // Start a new block after this many Bigs.
+  private static final int BLOCK_BIGS = 4096;
+  // Or this many bytes.
+  private static final int BLOCK_BYTES = 1 << 16;
+
+  private BitsStream() {
+  }
+
+  public static void writeTo(Bits<Big> bits, OutputStream out) throws IOException {
+    writeTo(bits, out, false);
+  }
+
+  // Write them out - with a checksum on each block if asked.
+  public static void writeTo(Bits<Big> bits, OutputStream out, boolean checksums) throws IOException {
+    out.write(MAGIC);
+    out.write(VERSION);
+    out.write(checksums ? CHECKSUMS : 0);
+    Block block = new Block(checksums);
+    for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+      if (block.add(i.next())) {
+        block.writeTo(out);
+      }
+    }
+    block.writeTo(out);
+    // The end.
+    out.write(0);
+    out.flush();
+  }
+
+  public static void writeTo(Bits<Big> bits, WritableByteChannel out) throws IOException {
+    writeTo(bits, out, false);
+  }
+
+  public static void writeTo(Bits<Big> bits, WritableByteChannel out, boolean checksums) throws IOException {
+    writeTo(bits, Channels.newOutputStream(out), checksums);
+  }
+
+  // Read it all into a HugeBits.
+  public static HugeBits readFrom(InputStream in) throws IOException {
+    HugeBits.Appender bits = new HugeBits.Appender();
+    Reader reader = new Reader(in, null, null);
+    for (Big big = reader.next(); big != null; big = reader.next()) {
+      bits.write(big);
+    }
+    return bits.done();
+  }
+
+  public static HugeBits readFrom(ReadableByteChannel in) throws IOException {
+    return readFrom(Channels.newInputStream(in));
+  }
+
+  // Read just the Bigs that start from index from up to (but not including) to.
+  public static Reader reader(InputStream in, BigInteger from, BigInteger to) throws IOException {
+    return new Reader(in, from, to);
+  }
+
+  // One block being written.
+  private static class Block {
+    private final boolean checksums;
+    private final Bytes bigs = new Bytes();
+    private final Bytes header = new Bytes();
+    private int count = 0;
+    // Byte indexes of the first one and just past the last.
+    private BigInteger first;
+    private BigInteger end;
+
+    Block(boolean checksums) {
+      this.checksums = checksums;
+    }
+
+    // Add one - true if the block is now full.
+    boolean add(Big big) {
+      BigInteger index = big.index().shiftRight(3);
+      if (count == 0) {
+        first = end = index;
+      }
+      bigs.putVar(index.subtract(end));
+      if (big instanceof Run) {
+        Run run = (Run) big;
+        bigs.putVar(run.count().shiftLeft(1).setBit(0));
+        bigs.put(new byte[]{run.fill()}, 1);
+        end = index.add(run.count());
+      } else {
+        byte[] bytes = big.bytes();
+        bigs.putVar((long) bytes.length << 1);
+        bigs.put(bytes, bytes.length);
+        end = index.add(BigInteger.valueOf(bytes.length));
+      }
+      count += 1;
+      return count >= BLOCK_BIGS || bigs.size >= BLOCK_BYTES;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+      if (count > 0) {
+        header.putVar(count);
+        header.putVar(first);
+        header.putVar(end.subtract(first));
+        header.putVar(bigs.size);
+        out.write(header.bytes, 0, header.size);
+        out.write(bigs.bytes, 0, bigs.size);
+        if (checksums) {
+          long crc = crc(bigs.bytes, bigs.size);
+          out.write(new byte[]{(byte) crc, (byte) (crc >>> 8), (byte) (crc >>> 16), (byte) (crc >>> 24)});
+        }
+        header.size = 0;
+        bigs.size = 0;
+        count = 0;
+      }
+    }
+
+  }
+
+  /**
+   * Reads Bigs back a block at a time.
+   */
+  public static class Reader implements Closeable {
+    private final InputStream in;
+    // Range wanted - null for everything.
+    private final BigInteger from;
+    private final BigInteger to;
+    private final boolean checksums;
+    private final int version;
+    // The current block.
+    private final Bytes block = new Bytes();
+    private int left = 0;
+    // Byte index just past the last one read.
+    private BigInteger end;
+    private boolean done = false;
+
+    Reader(InputStream in, BigInteger from, BigInteger to) throws IOException {
+      this.in = new BufferedInputStream(in, BLOCK_BYTES);
+      this.from = from;
+      this.to = to;
+      byte[] magic = new byte[MAGIC.length];
+      readFully(magic, magic.length);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not a Bits stream");
+      }
+      version = read();
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Unknown Bits stream version " + version);
+      }
+      checksums = (read() & CHECKSUMS) != 0;
+    }
+
+    // The next one - null at the end.
+    public Big next() throws IOException {
+      while (!done) {
+        while (left > 0) {
+          left -= 1;
+          end = end.add(block.getVar());
+          BigInteger index = end.shiftLeft(3);
+          BigInteger length = block.getVar();
+          Big big;
+          if (version > 1 && length.testBit(0)) {
+            BigInteger count = length.shiftRight(1);
+            big = new Run(index, count, block.bytes[block.size++]);
+            end = end.add(count);
+          } else {
+            int n = small(version > 1 ? length.shiftRight(1) : length);
+            // Most significant first for BigInteger.
+            byte[] be = new byte[n];
+            for (int i = n - 1; i >= 0; i--) {
+              be[i] = block.bytes[block.size++];
+            }
+            big = new Big(index, new BigInteger(1, be));
+            end = end.add(BigInteger.valueOf(n));
+          }
+          if ((from == null || index.compareTo(from) >= 0) && (to == null || index.compareTo(to) < 0)) {
+            return big;
+          }
+        }
+        nextBlock();
+      }
+      return null;
+    }
+
+    // Read the next block we want - skipping any we do not.
+    private void nextBlock() throws IOException {
+      for (;;) {
+        int count = small(readVar());
+        if (count == 0) {
+          done = true;
+          return;
+        }
+        BigInteger first = readVar();
+        BigInteger last = first.add(readVar());
+        int size = small(readVar());
+        int crcSize = checksums ? 4 : 0;
+        if (to != null && first.shiftLeft(3).compareTo(to) >= 0) {
+          // Nothing more wanted.
+          done = true;
+          return;
+        }
+        if (from != null && last.shiftLeft(3).compareTo(from) <= 0) {
+          // All below - skip it.
+          skipFully(size + crcSize);
+          continue;
+        }
+        block.ensure(size);
+        readFully(block.bytes, size);
+        if (checksums) {
+          byte[] crc = new byte[4];
+          readFully(crc, 4);
+          long expected = (crc[0] & 0xFFL) | (crc[1] & 0xFFL) << 8 | (crc[2] & 0xFFL) << 16 | (crc[3] & 0xFFL) << 24;
+          if (crc(block.bytes, size) != expected) {
+            throw new IOException("Bits stream checksum failed in block at " + first);
+          }
+        }
+        // Use size as the read position.
+        block.size = 0;
+        left = count;
+        end = first;
+        return;
+      }
+    }
+
+    private int read() throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Bits stream ended early");
+      }
+      return b;
+    }
+
+    private BigInteger readVar() throws IOException {
+      long v = 0;
+      for (int shift = 0; shift < 56; shift += 7) {
+        int b = read();
+        v |= (long) (b & 0x7F) << shift;
+        if (b < 0x80) {
+          return BigInteger.valueOf(v);
+        }
+      }
+      // Very big.
+      BigInteger big = BigInteger.valueOf(v);
+      for (int shift = 56;; shift += 7) {
+        int b = read();
+        big = big.or(BigInteger.valueOf(b & 0x7F).shiftLeft(shift));
+        if (b < 0x80) {
+          return big;
+        }
+      }
+    }
+
+    private void readFully(byte[] bytes, int n) throws IOException {
+      for (int done = 0; done < n;) {
+        int got = in.read(bytes, done, n - done);
+        if (got < 0) {
+          throw new EOFException("Bits stream ended early");
+        }
+        done += got;
+      }
+    }
+
+    private void skipFully(long n) throws IOException {
+      while (n > 0) {
+        long skipped = in.skip(n);
+        if (skipped <= 0) {
+          // Might just not want to skip - make sure.
+          read();
+          skipped = 1;
+        }
+        n -= skipped;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  }
+
+  // Counts and lengths must fit in an int.
+  private static int small(BigInteger v) throws IOException {
+    if (v.bitLength() > 31) {
+      throw new IOException("Bits stream is corrupt - " + v + " is too big");
+    }
+    return v.intValue();
+  }
+
+  private static long crc(byte[] bytes, int n) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, n);
+    return crc.getValue();
+  }
+
+  // A growable byte buffer - size doubles as the read position when reading.
+  private static class Bytes {
+    byte[] bytes = new byte[256];
+    int size = 0;
+
+    void ensure(int n) {
+      if (bytes.length < n) {
+        bytes = Arrays.copyOf(bytes, Math.max(n, bytes.length * 2));
+      }
+    }
+
+    void put(byte[] b, int n) {
+      ensure(size + n);
+      System.arraycopy(b, 0, bytes, size, n);
+      size += n;
+    }
+
+    void putVar(long v) {
+      ensure(size + 10);
+      while ((v & ~0x7FL) != 0) {
+        bytes[size++] = (byte) (v | 0x80);
+        v >>>= 7;
+      }
+      bytes[size++] = (byte) v;
+    }
+
+    void putVar(BigInteger v) {
+      if (v.bitLength() < 64) {
+        putVar(v.longValue());
+      } else {
+        // Very big - seven bits at a time.
+        for (int bit = 0;; bit += 7) {
+          int b = v.shiftRight(bit).intValue() & 0x7F;
+          if (v.bitLength() <= bit + 7) {
+            ensure(size + 1);
+            bytes[size++] = (byte) b;
+            return;
+          }
+          ensure(size + 1);
+          bytes[size++] = (byte) (b | 0x80);
+        }
+      }
+    }
+
+    BigInteger getVar() {
+      long v = 0;
+      for (int shift = 0; shift < 56; shift += 7) {
+        int b = bytes[size++];
+        v |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return BigInteger.valueOf(v);
+        }
+      }
+      BigInteger big = BigInteger.valueOf(v);
+      for (int shift = 56;; shift += 7) {
+        int b = bytes[size++];
+        big = big.or(BigInteger.valueOf(b & 0x7F).shiftLeft(shift));
+        if (b >= 0) {
+          return big;
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Bits that many threads can set and clear at once.
+ *
+ * The bit space is cut into chunks of CHUNK bits. Each chunk with
+ * anything in it is one immutable BigInteger in a ConcurrentSkipListMap
+ * and a change swaps in a new one with a compare and set - no locks.
+ * Writers only ever meet when they hit the same chunk and readers never
+ * wait at all.
+ *
+ * A chunk may hold zero bytes and a Big may run across chunks so the
+ * iterators normalise on the fly - the chunks are written through an
+ * Appender and the Bigs taken out as they are finished. They are weakly
+ * consistent like those of the map - each chunk is seen as it was at
+ * some moment but changes made while walking may or may not be seen.
+ *
+ * @author OldCurmudgeon.
+ */
+public class ConcurrentBits extends Bits<Big> {
+  // Bits in a chunk - a multiple of 8.
+  static final int CHUNK = 1024;
+  private static final BigInteger BCHUNK = BigInteger.valueOf(CHUNK);
+  private static final BigInteger BYTE = BigInteger.valueOf(0xFF);
+  // Bit index of the start of the chunk to its bits.
+  private final ConcurrentSkipListMap<BigInteger, BigInteger> chunks = new ConcurrentSkipListMap<>();
+
+  public ConcurrentBits() {
+    // Empty.
+  }
+
+  // Start with the same bits as another.
+  public ConcurrentBits(Bits<Big> bits) {
+    for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+      or(i.next());
+    }
+  }
+
+  public void setBit(BigInteger bit) {
+    checkBit(bit);
+    BigInteger key = key(bit);
+    update(key, BigInteger.ONE.shiftLeft(bit.subtract(key).intValue()), true);
+  }
+
+  public void clearBit(BigInteger bit) {
+    checkBit(bit);
+    BigInteger key = key(bit);
+    update(key, BigInteger.ONE.shiftLeft(bit.subtract(key).intValue()), false);
+  }
+
+  /*
+   * Or a whole Big in.
+   *
+   * Each chunk it covers is changed atomically but not all of them at
+   * once. As or only ever sets bits the end result is the same whatever
+   * order the writers get there.
+   *
+   * Each chunk is made from its own slice of the bytes so the value is
+   * only walked once.
+   */
+  public void or(Big big) {
+    // Least significant first.
+    byte[] bytes = big.bytes();
+    BigInteger key = key(big.index());
+    // Where the Big starts in the first chunk - in bytes.
+    int at = big.index().subtract(key).intValue() / 8;
+    for (int from = 0; from < bytes.length; key = key.add(BCHUNK)) {
+      int n = Math.min(CHUNK / 8 - at, bytes.length - from);
+      // BigInteger wants them most significant first.
+      byte[] piece = new byte[at + n];
+      for (int i = 0; i < n; i++) {
+        piece[n - 1 - i] = bytes[from + i];
+      }
+      update(key, new BigInteger(1, piece), true);
+      from += n;
+      at = 0;
+    }
+  }
+
+  // Set or clear the bits in one chunk.
+  private void update(BigInteger key, BigInteger bits, boolean set) {
+    if (bits.signum() == 0) {
+      return;
+    }
+    for (;;) {
+      BigInteger old = chunks.get(key);
+      if (old == null) {
+        if (!set || chunks.putIfAbsent(key, bits) == null) {
+          return;
+        }
+      } else {
+        BigInteger now = set ? old.or(bits) : old.andNot(bits);
+        if (now.equals(old)) {
+          return;
+        }
+        // Gone if it is empty.
+        if (now.signum() == 0 ? chunks.remove(key, old) : chunks.replace(key, old, now)) {
+          return;
+        }
+      }
+      // Someone else got there first - try again.
+    }
+  }
+
+  // The start of the chunk holding bit.
+  private static BigInteger key(BigInteger bit) {
+    return bit.divide(BCHUNK).multiply(BCHUNK);
+  }
+
+  // The chunk a Big running through the bottom of chunk key could start in.
+  private BigInteger start(BigInteger key) {
+    for (;;) {
+      BigInteger here = chunks.get(key);
+      if (here == null || here.and(BYTE).signum() == 0) {
+        // Nothing in the bottom byte - nothing runs through it.
+        return key;
+      }
+      Map.Entry<BigInteger, BigInteger> below = chunks.lowerEntry(key);
+      if (below == null || !below.getKey().add(BCHUNK).equals(key) || below.getValue().bitLength() <= CHUNK - 8) {
+        // Nothing in the top byte of the one below.
+        return key;
+      }
+      key = below.getKey();
+    }
+  }
+
+  @Override
+  public boolean testBit(BigInteger bit) {
+    checkBit(bit);
+    BigInteger key = key(bit);
+    BigInteger chunk = chunks.get(key);
+    return chunk != null && chunk.testBit(bit.subtract(key).intValue());
+  }
+
+  @Override
+  Big higher(BigInteger at) {
+    Sparse.Iterator<Big, BigInteger> i = iterator();
+    i.skipTo(at.add(BigInteger.ONE));
+    while (i.hasNext() && i.index().compareTo(at) <= 0) {
+      i.next();
+    }
+    return i.next();
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator() {
+    return new ConcurrentBitsIterator();
+  }
+
+  // Backwards from a copy - the Bigs can only be found going forwards.
+  @Override
+  public Sparse.Iterator<Big, BigInteger> reverseIterator() {
+    HugeBits.Builder copy = new HugeBits.Builder();
+    for (Sparse.Iterator<Big, BigInteger> i = iterator(); i.hasNext();) {
+      copy.add(i.next());
+    }
+    return copy.build().reverseIterator();
+  }
+
+  @Override
+  public BigInteger length() {
+    Map.Entry<BigInteger, BigInteger> last = chunks.lastEntry();
+    return last == null ? BigInteger.ZERO : last.getKey().add(BigInteger.valueOf(last.getValue().bitLength()));
+  }
+
+  class ConcurrentBitsIterator extends Bits.BitsIterator {
+    // The chunks still to write.
+    private Iterator<Map.Entry<BigInteger, BigInteger>> it = chunks.entrySet().iterator();
+    // Start of the last chunk written.
+    private BigInteger written = null;
+    // Normalises the chunks.
+    private HugeBits.Appender out = new HugeBits.Appender();
+    // Finished Bigs.
+    private final ArrayDeque<Big> ready = new ArrayDeque<>();
+    private boolean done = false;
+    // Index of the last one taken - skipTo never goes back past it.
+    private BigInteger last = null;
+
+    @Override
+    protected void getNext() {
+      Big big = null;
+      while (big == null && !(ready.isEmpty() && done)) {
+        if (ready.isEmpty()) {
+          if (it.hasNext()) {
+            Map.Entry<BigInteger, BigInteger> chunk = it.next();
+            written = chunk.getKey();
+            out.write(new Big(chunk.getKey(), chunk.getValue()));
+            out.drainTo(ready, false);
+          } else {
+            out.drainTo(ready, true);
+            done = true;
+          }
+        } else {
+          big = ready.poll();
+          if (last != null && big.index().compareTo(last) <= 0) {
+            // Seen it before we skipped.
+            big = null;
+          }
+        }
+      }
+      if (big != null) {
+        last = big.index();
+      }
+      next = big;
+    }
+
+    // Start again from the chunk it is in - if that is ahead of us.
+    @Override
+    public void skipTo(BigInteger at) {
+      if (next == null || ((Big) next).index().add(((Big) next).length()).compareTo(at) <= 0) {
+        BigInteger from = start(key(at));
+        if (written == null || from.compareTo(written) > 0) {
+          it = chunks.tailMap(from).entrySet().iterator();
+          out = new HugeBits.Appender();
+          ready.clear();
+          done = false;
+          next = null;
+        }
+      }
+      super.skipTo(at);
+    }
+
+    @Override
+    public String toString() {
+      return "[" + (next == null ? "" : next.toString()) + "]";
+    }
+
+  }
+
+}
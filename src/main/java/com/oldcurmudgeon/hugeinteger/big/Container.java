@@ -0,0 +1,419 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.util.Arrays;
+
+/**
+ * The bits of one chunk of a RoaringBits.
+ *
+ * Each chunk holds BITS bits and picks whichever of the three forms
+ * is smallest for what is in it:
+ *
+ * Array - the positions of the set bits - for sparse chunks.
+ *
+ * Bitmap - one bit per bit - for dense chunks.
+ *
+ * Runs - start and length of each run of ones - for contiguous chunks.
+ *
+ * Containers are never changed once made so chunks can be shared
+ * between RoaringBits.
+ *
+ * @author OldCurmudgeon.
+ */
+abstract class Container {
+  // Bits in a chunk.
+  static final int BITS = 1 << 16;
+  // Words in a bitmap.
+  static final int WORDS = BITS / 64;
+  // Bytes in a chunk.
+  static final int BYTES = BITS / 8;
+  // Somewhere to op into - only copied out if it ends up a Bitmap.
+  private static final ThreadLocal<long[]> SCRATCH = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[WORDS];
+    }
+
+  };
+
+  // How many bits are set.
+  abstract int cardinality();
+
+  // Is that bit set?
+  abstract boolean contains(int x);
+
+  // The highest set bit.
+  abstract int last();
+
+  // All of it as bitmap words - do not change them.
+  abstract long[] words();
+
+  // Write all BYTES bytes of the chunk.
+  abstract void writeTo(HugeBits.Appender out);
+
+  // Combine with another - null if the result is empty.
+  Container apply(Container o, Bits.Op op) {
+    long[] a = words();
+    long[] b = o.words();
+    // A Bitmap's words are its own - anyone else's are a fresh copy we can write over.
+    boolean mine = !(this instanceof Bitmap);
+    long[] r = mine ? a : SCRATCH.get();
+    WordKernel.KERNEL.op(op, a, b, r, WORDS);
+    return of(r, !mine);
+  }
+
+  // What is set here but not in the other - null if that is nothing.
+  Container andNot(Container o) {
+    long[] a = words();
+    long[] b = o.words();
+    boolean mine = !(this instanceof Bitmap);
+    long[] r = mine ? a : SCRATCH.get();
+    WordKernel.KERNEL.andNot(a, b, r, WORDS);
+    return of(r, !mine);
+  }
+
+  // The op on single bits.
+  static boolean op(Bits.Op op, boolean a, boolean b) {
+    return op.op(a ? (byte) 1 : 0, b ? (byte) 1 : 0) != 0;
+  }
+
+  /*
+   * The smallest container for those words - null if they are all zero.
+   *
+   * Copies the words if it keeps them and asked to.
+   */
+  static Container of(long[] words, boolean copy) {
+    int card = WordKernel.KERNEL.bitCount(words, WORDS);
+    if (card == 0) {
+      return null;
+    }
+    int runs = 0;
+    long below = 0;
+    for (int i = 0; i < WORDS; i++) {
+      long w = words[i];
+      // A run starts at every set bit whose lower neighbour is clear.
+      runs += Long.bitCount(w & ~((w << 1) | below));
+      below = w >>> 63;
+    }
+    // Sizes in bytes.
+    int asArray = 2 * card;
+    int asRuns = 4 * runs;
+    if (asRuns <= asArray && asRuns <= BYTES) {
+      return Runs.of(words, runs);
+    }
+    if (asArray <= BYTES) {
+      return Array.of(words, card);
+    }
+    return new Bitmap(copy ? words.clone() : words, card);
+  }
+
+  /**
+   * Sorted positions of the set bits.
+   */
+  static class Array extends Container {
+    private final char[] values;
+
+    Array(char[] values) {
+      this.values = values;
+    }
+
+    static Array of(long[] words, int card) {
+      char[] values = new char[card];
+      int n = 0;
+      for (int i = 0; i < WORDS; i++) {
+        for (long w = words[i]; w != 0; w &= w - 1) {
+          values[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(w));
+        }
+      }
+      return new Array(values);
+    }
+
+    @Override
+    int cardinality() {
+      return values.length;
+    }
+
+    @Override
+    boolean contains(int x) {
+      return Arrays.binarySearch(values, (char) x) >= 0;
+    }
+
+    @Override
+    int last() {
+      return values[values.length - 1];
+    }
+
+    @Override
+    long[] words() {
+      long[] words = new long[WORDS];
+      for (char v : values) {
+        words[v >>> 6] |= 1L << v;
+      }
+      return words;
+    }
+
+    @Override
+    Container apply(Container o, Bits.Op op) {
+      if (!(o instanceof Array)) {
+        return super.apply(o, op);
+      }
+      // Merge the two sorted lists.
+      char[] a = values;
+      char[] b = ((Array) o).values;
+      char[] r = new char[a.length + b.length];
+      int n = 0;
+      for (int i = 0, j = 0; i < a.length || j < b.length;) {
+        if (j >= b.length || (i < a.length && a[i] < b[j])) {
+          if (op.keepA) {
+            r[n++] = a[i];
+          }
+          i += 1;
+        } else if (i >= a.length || b[j] < a[i]) {
+          if (op.keepB) {
+            r[n++] = b[j];
+          }
+          j += 1;
+        } else {
+          if (op(op, true, true)) {
+            r[n++] = a[i];
+          }
+          i += 1;
+          j += 1;
+        }
+      }
+      if (n == 0) {
+        return null;
+      }
+      if (2 * n > BYTES) {
+        // Too big to be an array now.
+        return of(new Array(Arrays.copyOf(r, n)).words(), false);
+      }
+      return new Array(Arrays.copyOf(r, n));
+    }
+
+    @Override
+    void writeTo(HugeBits.Appender out) {
+      // Gather the bits byte by byte.
+      int written = 0;
+      for (int i = 0; i < values.length;) {
+        int at = values[i] >>> 3;
+        int b = 0;
+        for (; i < values.length && values[i] >>> 3 == at; i++) {
+          b |= 1 << (values[i] & 7);
+        }
+        out.skip(at - written);
+        out.write((byte) b);
+        written = at + 1;
+      }
+      out.skip(BYTES - written);
+    }
+
+  }
+
+  /**
+   * One bit per bit.
+   */
+  static class Bitmap extends Container {
+    private final long[] words;
+    private final int card;
+
+    Bitmap(long[] words, int card) {
+      this.words = words;
+      this.card = card;
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(int x) {
+      return (words[x >>> 6] & (1L << x)) != 0;
+    }
+
+    @Override
+    int last() {
+      int i = WORDS - 1;
+      while (words[i] == 0) {
+        i -= 1;
+      }
+      return i * 64 + 63 - Long.numberOfLeadingZeros(words[i]);
+    }
+
+    @Override
+    long[] words() {
+      return words;
+    }
+
+    @Override
+    void writeTo(HugeBits.Appender out) {
+      for (long w : words) {
+        if (w == 0) {
+          out.skip(8);
+        } else {
+          for (int i = 0; i < 8; i++, w >>>= 8) {
+            out.write((byte) w);
+          }
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Runs of ones - start and length less one for each.
+   */
+  static class Runs extends Container {
+    private final char[] runs;
+
+    Runs(char[] runs) {
+      this.runs = runs;
+    }
+
+    static Runs of(long[] words, int count) {
+      char[] runs = new char[2 * count];
+      int n = 0;
+      int start = -1;
+      for (int x = 0; x <= BITS; x++) {
+        boolean set = x < BITS && (words[x >>> 6] & (1L << x)) != 0;
+        if (set && start < 0) {
+          start = x;
+        } else if (!set && start >= 0) {
+          runs[n++] = (char) start;
+          runs[n++] = (char) (x - start - 1);
+          start = -1;
+        }
+      }
+      return new Runs(runs);
+    }
+
+    @Override
+    int cardinality() {
+      int card = 0;
+      for (int i = 1; i < runs.length; i += 2) {
+        card += runs[i] + 1;
+      }
+      return card;
+    }
+
+    @Override
+    boolean contains(int x) {
+      for (int i = 0; i < runs.length && runs[i] <= x; i += 2) {
+        if (x <= runs[i] + runs[i + 1]) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    int last() {
+      return runs[runs.length - 2] + runs[runs.length - 1];
+    }
+
+    @Override
+    long[] words() {
+      long[] words = new long[WORDS];
+      for (int i = 0; i < runs.length; i += 2) {
+        for (int x = runs[i], end = runs[i] + runs[i + 1]; x <= end; x++) {
+          words[x >>> 6] |= 1L << x;
+        }
+      }
+      return words;
+    }
+
+    @Override
+    Container apply(Container o, Bits.Op op) {
+      if (!(o instanceof Runs)) {
+        return super.apply(o, op);
+      }
+      // Sweep the run boundaries of both - between boundaries nothing changes.
+      char[] a = runs;
+      char[] b = ((Runs) o).runs;
+      char[] r = new char[2 * (a.length + b.length)];
+      int n = 0;
+      int i = 0;
+      int j = 0;
+      boolean inA = false;
+      boolean inB = false;
+      for (int x = 0; x < BITS;) {
+        // Next boundary in each.
+        int nextA = i >= a.length ? BITS : inA ? a[i] + a[i + 1] + 1 : a[i];
+        int nextB = j >= b.length ? BITS : inB ? b[j] + b[j + 1] + 1 : b[j];
+        int next = Math.min(nextA, nextB);
+        if (next > x && op(op, inA, inB)) {
+          if (n > 0 && r[n - 2] + r[n - 1] + 1 == x) {
+            // Carries on from the last one.
+            r[n - 1] += next - x;
+          } else {
+            r[n++] = (char) x;
+            r[n++] = (char) (next - x - 1);
+          }
+        }
+        // Step over the boundary.
+        if (nextA == next && i < a.length) {
+          if (inA) {
+            i += 2;
+          }
+          inA = !inA;
+        }
+        if (nextB == next && j < b.length) {
+          if (inB) {
+            j += 2;
+          }
+          inB = !inB;
+        }
+        x = next;
+      }
+      if (n == 0) {
+        return null;
+      }
+      if (2 * n > BYTES) {
+        // Too fragmented to stay as runs.
+        return of(new Runs(Arrays.copyOf(r, n)).words(), false);
+      }
+      return new Runs(Arrays.copyOf(r, n));
+    }
+
+    @Override
+    void writeTo(HugeBits.Appender out) {
+      int written = 0;
+      // The byte we are filling.
+      int at = -1;
+      int b = 0;
+      for (int i = 0; i < runs.length; i += 2) {
+        for (int x = runs[i], end = runs[i] + runs[i + 1]; x <= end; x++) {
+          if (x >>> 3 != at) {
+            if (at >= 0) {
+              out.skip(at - written);
+              out.write((byte) b);
+              written = at + 1;
+            }
+            at = x >>> 3;
+            b = 0;
+          }
+          b |= 1 << (x & 7);
+        }
+      }
+      out.skip(at - written);
+      out.write((byte) b);
+      out.skip(BYTES - at - 1);
+    }
+
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lazy expression over Bits.
+ *
+ * Bits.expr(a).xor(b).and(c).or(d) just records the tree. Evaluating it
+ * walks all of the leaves together in one pass in index order so there
+ * are no intermediate HugeBits to build and normalise.
+ *
+ * At each step every leaf is lined up at the same index and the span is
+ * cut at the nearest place any leaf starts or stops. Anything that cannot
+ * produce a one in the current span is not looked at - an and with an
+ * operand that has nothing here is dropped without touching the others,
+ * and its leaves are skipped forward to where it could next produce one.
+ *
+ * An Expr used more than once in the tree is only evaluated once per step.
+ *
+ * Where every leaf that has anything in the span is a Run every byte
+ * comes out the same - one is worked out and the span goes out as a Run.
+ *
+ * @author OldCurmudgeon.
+ */
+public abstract class Expr {
+
+  Expr() {
+  }
+
+  // A leaf.
+  static Expr of(Bits<Big> bits) {
+    return new Leaf(bits);
+  }
+
+  public Expr xor(Bits<Big> b) {
+    return xor(of(b));
+  }
+
+  public Expr xor(Expr b) {
+    return new Node(Bits.Op.xor, this, b);
+  }
+
+  public Expr and(Bits<Big> b) {
+    return and(of(b));
+  }
+
+  public Expr and(Expr b) {
+    return new Node(Bits.Op.and, this, b);
+  }
+
+  public Expr or(Bits<Big> b) {
+    return or(of(b));
+  }
+
+  public Expr or(Expr b) {
+    return new Node(Bits.Op.or, this, b);
+  }
+
+  /*
+   * Evaluate it in one pass.
+   *
+   * Every source is always at or beyond at. When nothing can come out at
+   * at they all skip forward to where something can.
+   */
+  public HugeBits evaluate() {
+    List<Source> sources = new ArrayList<>();
+    Term root = term(new IdentityHashMap<Expr, Term>(), sources);
+    HugeBits.Appender out = new HugeBits.Appender();
+    BigInteger at = BigInteger.ZERO;
+    for (long step = 0;;) {
+      BigInteger next = root.next(++step);
+      if (next == null) {
+        // All done.
+        break;
+      }
+      if (next.compareTo(at) > 0) {
+        // Nothing below there - everything can catch up.
+        at = next;
+        for (Source source : sources) {
+          source.skipTo(at);
+        }
+        continue;
+      }
+      // Drop whatever cannot contribute here.
+      root.prune(at, step);
+      // As far as all sources stay the same.
+      int n = Integer.MAX_VALUE;
+      boolean runs = true;
+      for (Source source : sources) {
+        n = Math.min(n, source.span(at));
+        runs &= !source.bytesAt(at);
+      }
+      // Nothing but Runs here - every byte comes out the same so just work out one.
+      byte[] value = root.value(at, runs ? 1 : n, ++step);
+      if (value != null) {
+        out.skipTo(at);
+        if (runs) {
+          out.fill(value[0], BigInteger.valueOf(n));
+        } else {
+          for (int i = 0; i < n; i++) {
+            out.write(value[i]);
+          }
+        }
+      }
+      for (Source source : sources) {
+        source.skip(at, n);
+      }
+      at = at.add(BigInteger.valueOf(n).multiply(Bits.EIGHT));
+    }
+    return out.done();
+  }
+
+  // Make my Term - just once however often I appear.
+  Term term(Map<Expr, Term> terms, List<Source> sources) {
+    Term term = terms.get(this);
+    if (term == null) {
+      term = compile(terms, sources);
+      terms.put(this, term);
+    } else {
+      term.shared = true;
+    }
+    return term;
+  }
+
+  // Make a new Term for me.
+  abstract Term compile(Map<Expr, Term> terms, List<Source> sources);
+
+  private static class Leaf extends Expr {
+    private final Bits<Big> bits;
+
+    Leaf(Bits<Big> bits) {
+      this.bits = bits;
+    }
+
+    @Override
+    Term compile(Map<Expr, Term> terms, List<Source> sources) {
+      Source source = new Source(new BigCursor(bits.iterator()));
+      sources.add(source);
+      return source;
+    }
+
+  }
+
+  private static class Node extends Expr {
+    private final Bits.Op op;
+    private final Expr a;
+    private final Expr b;
+
+    Node(Bits.Op op, Expr a, Expr b) {
+      this.op = op;
+      this.a = a;
+      this.b = b;
+    }
+
+    @Override
+    Term compile(Map<Expr, Term> terms, List<Source> sources) {
+      return new Apply(op, a.term(terms, sources), b.term(terms, sources));
+    }
+
+  }
+
+  /*
+   * One part of an Expr being evaluated.
+   *
+   * Results are kept for the step they were worked out for so a shared
+   * one is only worked out once.
+   */
+  abstract static class Term {
+    // Used in more than one place - must not be skipped on behalf of just one of them.
+    boolean shared = false;
+    private long nextStep = 0;
+    private BigInteger next = null;
+    private long valueStep = 0;
+    private byte[] value = null;
+
+    // The first bit index that could come out - null if none.
+    final BigInteger next(long step) {
+      if (nextStep != step) {
+        next = first(step);
+        nextStep = step;
+      }
+      return next;
+    }
+
+    // The n bytes from at - null if they are all zero.
+    final byte[] value(BigInteger at, int n, long step) {
+      if (valueStep != step) {
+        BigInteger first = next(step);
+        value = first != null && first.equals(at) ? get(at, n, step) : null;
+        valueStep = step;
+      }
+      return value;
+    }
+
+    // Skip forward if nothing can come out at at.
+    final void prune(BigInteger at, long step) {
+      if (!shared) {
+        BigInteger first = next(step);
+        if (first == null || first.compareTo(at) > 0) {
+          skipTo(first);
+        } else {
+          pruneBelow(at, step);
+        }
+      }
+    }
+
+    abstract BigInteger first(long step);
+
+    abstract byte[] get(BigInteger at, int n, long step);
+
+    // Move on to there - null for the end.
+    abstract void skipTo(BigInteger at);
+
+    abstract void pruneBelow(BigInteger at, long step);
+
+  }
+
+  // A leaf being walked.
+  static class Source extends Term {
+    private final BigCursor cursor;
+    private boolean done = false;
+    private byte[] bytes = new byte[0];
+
+    Source(BigCursor cursor) {
+      this.cursor = cursor;
+    }
+
+    private boolean more() {
+      return !done && cursor.hasData();
+    }
+
+    @Override
+    BigInteger first(long step) {
+      return more() ? cursor.start() : null;
+    }
+
+    @Override
+    byte[] get(BigInteger at, int n, long step) {
+      if (bytes.length < n) {
+        bytes = new byte[n];
+      }
+      for (int i = 0; i < n; i++) {
+        bytes[i] = cursor.get(i);
+      }
+      return bytes;
+    }
+
+    @Override
+    void skipTo(BigInteger at) {
+      if (at == null) {
+        done = true;
+      } else if (!done) {
+        cursor.skipTo(at);
+      }
+    }
+
+    @Override
+    void pruneBelow(BigInteger at, long step) {
+      // Nothing below me.
+    }
+
+    // Have I got bytes that are not all the same at at?
+    boolean bytesAt(BigInteger at) {
+      return more() && !cursor.isRun() && cursor.start().equals(at);
+    }
+
+    // How many bytes from at before I start or stop.
+    int span(BigInteger at) {
+      if (!more()) {
+        return Integer.MAX_VALUE;
+      }
+      BigInteger start = cursor.start();
+      if (start.equals(at)) {
+        return cursor.remaining();
+      }
+      BigInteger gap = start.subtract(at).divide(Bits.EIGHT);
+      return gap.bitLength() < 32 ? gap.intValue() : Integer.MAX_VALUE;
+    }
+
+    // Step past the n bytes from at.
+    void skip(BigInteger at, int n) {
+      if (more() && cursor.start().equals(at)) {
+        cursor.skip(n);
+      }
+    }
+
+  }
+
+  // An op being applied.
+  private static class Apply extends Term {
+    private final Bits.Op op;
+    private final Term a;
+    private final Term b;
+    private byte[] bytes = new byte[0];
+
+    Apply(Bits.Op op, Term a, Term b) {
+      this.op = op;
+      this.a = a;
+      this.b = b;
+    }
+
+    @Override
+    BigInteger first(long step) {
+      BigInteger nextA = a.next(step);
+      BigInteger nextB = b.next(step);
+      if (nextA == null || nextB == null) {
+        // Only one left - is it any use alone?
+        return nextA != null && op.keepA ? nextA : nextB != null && op.keepB ? nextB : null;
+      }
+      if (op.keepA && op.keepB) {
+        // Either will do.
+        return nextA.min(nextB);
+      }
+      // Need both.
+      return nextA.max(nextB);
+    }
+
+    @Override
+    byte[] get(BigInteger at, int n, long step) {
+      byte[] va = a.value(at, n, step);
+      if (va == null) {
+        return op.keepB ? b.value(at, n, step) : null;
+      }
+      byte[] vb = b.value(at, n, step);
+      if (vb == null) {
+        return op.keepA ? va : null;
+      }
+      if (bytes.length < n) {
+        bytes = new byte[n];
+      }
+      for (int i = 0; i < n; i++) {
+        bytes[i] = op.op(va[i], vb[i]);
+      }
+      return bytes;
+    }
+
+    @Override
+    void skipTo(BigInteger at) {
+      if (!a.shared) {
+        a.skipTo(at);
+      }
+      if (!b.shared) {
+        b.skipTo(at);
+      }
+    }
+
+    @Override
+    void pruneBelow(BigInteger at, long step) {
+      a.prune(at, step);
+      b.prune(at, step);
+    }
+
+  }
+
+}
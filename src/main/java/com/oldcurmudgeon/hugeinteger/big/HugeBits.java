@@ -18,8 +18,13 @@ package com.oldcurmudgeon.hugeinteger.big;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.TreeMap;
 
 /**
@@ -28,167 +33,186 @@ import java.util.TreeMap;
  * @author OldCurmudgeon.
  */
 public class HugeBits extends Bits<Big> {
+  /*
+   * Granularities - the fewest zero bytes that split a Big.
+   *
+   * BYTES splits at every zero byte which makes the Bigs as small as
+   * they can be. WORDS keeps gaps of less than a 64 bit word inside the
+   * Bigs so there are fewer of them and they are walked a word at a time.
+   * Either way a Big starts at its lowest non-zero byte.
+   */
+  public static final int BYTES = 1;
+  public static final int WORDS = 8;
+  // Ours.
+  private final int granularity;
   // The actual bits.
   private final TreeMap<BigInteger, Big> bits = new TreeMap<>();
+  // Worked out when first asked for - null after any change.
+  private BigInteger length = null;
+  // For rank and select - built when first asked for.
+  private RankIndex ranks = null;
 
-  public HugeBits(Big... bigs) {
-    for (Big i : bigs) {
-      addWithoutNormalise(i);
-    }
-    // Make everything consistent.
-    normalise();
+  public HugeBits() {
+    this(BYTES);
   }
 
-  // Does this interfere with the iterator?
-  private void addWithoutNormalise(Big big) {
-    // What do we do if two intersect?
-    Big old = bits.get(big.index());
-    if (old != null) {
-      // Add them together - todo - is this correct?
-      bits.put(big.index(), new Big(big.index(), big.value().add(old.value())));
-    } else {
-      // Just stick it in.
-      bits.put(big.index(), big);
+  // Empty - and normalised to that granularity as it is added to.
+  public HugeBits(int granularity) {
+    if (granularity < BYTES) {
+      throw new IllegalArgumentException("Granularity " + granularity);
     }
+    this.granularity = granularity;
+  }
+
+  public HugeBits(Big... bigs) {
+    this(BYTES);
+    // Build it in one go and take its bits.
+    bits.putAll(new Builder().add(bigs).build().bits);
   }
 
   // Does this interfere with the iterator?
   public void add(Big big) {
-    // Add it.
-    addWithoutNormalise(big);
-    // Make everything consistent.
-    normalise();
-  }
-
-  private void normalise() {
-    boolean repeat;
-    do {
-      // Keep doing it until nothing changes.
-      repeat = false;
-      // List of new ones to add.
-      ArrayList<Big> add = new ArrayList<>();
-      for (Iterator<Map.Entry<BigInteger, Big>> big = bits.entrySet().iterator(); big.hasNext();) {
-        Map.Entry<BigInteger, Big> it = big.next();
-        BigInteger value = it.getValue().value();
-        boolean remove = false;
-        // Discard all zeros.
-        if (!value.equals(BigInteger.ZERO)) {
-          // The index of the lowest byte.
-          BigInteger index = it.getKey();
-          // Inspect the bytes.
-          byte[] bytes = value.toByteArray();
-          // Cut out runs of zeros inside.
-          boolean chopped;
-          do {
-            chopped = false;
-            int f;
-            int l = 0;
-            for (f = 1; f < bytes.length - 1 && l == 0;) {
-              if (bytes[f] == 0) {
-                // Find the end of the range.
-                for (l = 1; l < bytes.length - f - 1 && bytes[f + l] == 0;) {
-                  // Work out the length.
-                  l += 1;
-                }
-              } else {
-                f += 1;
-              }
-            }
-            if (l > 0) {
-              // Make a new one.
-              add.add(new Big(index.add(BigInteger.valueOf(bytes.length - f).multiply(EIGHT)), new BigInteger(Arrays.copyOfRange(bytes, 0, f))));
-              // Remove it from the old.
-              bytes = Arrays.copyOfRange(bytes, f + l, bytes.length);
-              // Done some chopping.
-              chopped = true;
-            } else {
-              // ToDo
-            }
-          } while (chopped);
-          // Did we play around with the bytes?
-          if (!add.isEmpty()) {
-            // We hacked it around!
-            remove = true;
-            add.add(new Big(index, new BigInteger(bytes)));
-          }
-        } else {
-          // Remove a zero.
-          remove = true;
-        }
-        if (remove) {
-          // Remove it.
-          big.remove();
-        }
-      }
-      if (!add.isEmpty()) {
-        // Add my new ones.
-        for (Big a : add) {
-          addWithoutNormalise(a);
-        }
-        // Must repeat if we've added stuff.
-        repeat = true;
-      }
-    } while (repeat);
+    if (big.length().signum() != 0) {
+      // Only the region around it can change.
+      normalise(big);
+    }
   }
 
   /*
-   * A normalise that always rebuilds.
+   * Normalise just the region around a new Big.
+   *
+   * Everything that overlaps or touches it is taken out and added to it.
+   * Touching ones must be joined so the Bigs stay as long as possible -
+   * unless one is a Run, which stays as it is.
+   * A carry can make the sum reach the next Big along so keep going until
+   * it doesn't. The sum then goes back in through an Appender which cuts
+   * it at any zero bytes.
+   *
+   * A Run cannot be summed without building it so once one is in the
+   * region the Bigs are just gathered - as far as a carry could reach -
+   * and added byte by byte as Bits.add does, which takes Runs as they are.
    */
-  private void rebuild() {
-    TreeMap<BigInteger, Byte> bytes = new TreeMap<>();
-    // Roll the whole lot out into bytes.
-    for (Iterator<Map.Entry<BigInteger, Big>> big = bits.entrySet().iterator(); big.hasNext();) {
-      Map.Entry<BigInteger, Big> it = big.next();
-      BigInteger index = it.getKey();
-      BigInteger value = it.getValue().value();
-      byte[] itsBytes = value.toByteArray();
-      for (int i = 0; i < itsBytes.length; i++) {
-        BigInteger bi = index.add(BigInteger.valueOf(itsBytes.length - 1 - i));
-        bytes.put(bi, itsBytes[i]);
-      }
-    }
-    // Do nothing if empty.
-    if (!bytes.isEmpty()) {
-      // Unroll back out into a sequence of BigIntegers.
-      bits.clear();
-      // Start from the end.
-      Map.Entry<BigInteger, Byte> lastEntry = bytes.lastEntry();
-      BigInteger index = lastEntry.getKey();
-      ArrayList<Byte> next = new ArrayList<>();
-      // Walk it backwards.
-      for (Map.Entry<BigInteger, Byte> entry : bytes.descendingMap().entrySet()) {
-        //System.out.println("Entry " + entry.getKey() + " = " + entry.getValue());
-        if (entry.getKey().equals(index) && entry.getValue() != 0) {
-          // Just append.
-          next.add(entry.getValue());
-          index = index.subtract(BigInteger.ONE);
-        } else {
-          // Index has jumped or a zero byte.
-          index = add(index, next);
-          next.clear();
-        }
+  private void normalise(Big big) {
+    // What it joins - lowest first.
+    List<Big> region = new ArrayList<>();
+    // The sum so far - null once there is a Run in it.
+    Big sum = big instanceof Run ? null : big;
+    // The top of all of them.
+    BigInteger top = end(big);
+    // Only the one just below can reach up to it.
+    Map.Entry<BigInteger, Big> below = bits.floorEntry(big.index());
+    if (below != null && joins(below.getValue(), big, granularity)) {
+      region.add(below.getValue());
+      bits.remove(below.getKey());
+      sum = sumUnlessRun(sum, below.getValue());
+      top = top.max(end(below.getValue()));
+    }
+    BigInteger from = region.isEmpty() ? big.index() : region.get(0).index();
+    // Everything from there up to the end of the sum.
+    for (Map.Entry<BigInteger, Big> above = bits.ceilingEntry(from);
+            above != null && (sum != null ? joins(sum, above.getValue(), granularity) : reached(top, above.getValue()));
+            above = bits.ceilingEntry(from)) {
+      region.add(above.getValue());
+      bits.remove(above.getKey());
+      sum = sumUnlessRun(sum, above.getValue());
+      top = top.max(end(above.getValue()));
+    }
+    // What comes out of a Run may not be a Run so whatever touches the bottom comes too.
+    for (Map.Entry<BigInteger, Big> lower = bits.lowerEntry(from);
+            sum == null && lower != null && end(lower.getValue()).add(BigInteger.valueOf(8L * (granularity - 1))).compareTo(from) >= 0;
+            lower = bits.lowerEntry(from)) {
+      region.add(0, lower.getValue());
+      bits.remove(lower.getKey());
+      from = lower.getKey();
+    }
+    if (ranks != null) {
+      // Nothing below the sum changes.
+      ranks.changed(from);
+    }
+    // Put it back - in pieces if necessary.
+    Appender out = new Appender(granularity);
+    if (sum != null) {
+      out.write(sum);
+    } else {
+      BigInteger carryAt = Bits.arithmetic(new BigCursor(of(region).iterator()), new BigCursor(of(Arrays.asList(big)).iterator()), false, out);
+      if (carryAt != null) {
+        out.skipTo(carryAt);
+        out.write((byte) 1);
       }
-      // And what's left.
-      add(index, next);
+    }
+    HugeBits pieces = out.done();
+    bits.putAll(pieces.bits);
+    length = null;
+    if (BitsMetrics.on()) {
+      BitsMetrics.normalised(region.size(), pieces.size());
     }
   }
 
-  private BigInteger add(BigInteger index, ArrayList<Byte> next) {
-    if (next.size() > 0) {
-      // Make a new BigInteger.
-      byte[] newBytes = new byte[next.size()];
-      for (int i = 0; i < next.size(); i++) {
-        newBytes[i] = next.get(i);
-      }
-      bits.put(index, new Big(index, new BigInteger(newBytes)));
-      return index.subtract(BigInteger.valueOf(next.size()));
+  // Could a carry off top - or the gap after it - reach that one?
+  private boolean reached(BigInteger top, Big big) {
+    return big.index().compareTo(top.add(BigInteger.valueOf(8L * granularity))) <= 0;
+  }
+
+  // Bigs that are already normalised - in order - as they are.
+  static HugeBits of(List<Big> bigs) {
+    HugeBits them = new HugeBits();
+    for (Big big : bigs) {
+      them.bits.put(big.index(), big);
+    }
+    return them;
+  }
+
+  // Add another in - null if the sum is already null or it is a Run.
+  static Big sumUnlessRun(Big sum, Big big) {
+    return sum == null || big instanceof Run ? null : sum(sum, big);
+  }
+
+  // Add two Bigs together.
+  static Big sum(Big a, Big b) {
+    if (a.index().compareTo(b.index()) > 0) {
+      // a is the lowest.
+      return sum(b, a);
+    }
+    return new Big(a.index(), a.value().add(b.value().shiftLeft(b.index().subtract(a.index()).intValue())));
+  }
+
+  // The bit index just past the top byte.
+  private static BigInteger end(Big big) {
+    return big.end();
+  }
+
+  // Two that touch joined up - null if they do not touch or must stay apart.
+  private static Big touching(Big low, Big high) {
+    if (!end(low).equals(high.index())) {
+      return null;
+    }
+    if (low instanceof Run && high instanceof Run && ((Run) low).fill() == ((Run) high).fill()) {
+      return new Run(low.index(), ((Run) low).count().add(((Run) high).count()), ((Run) low).fill());
+    }
+    return low instanceof Run || high instanceof Run ? null : sum(low, high);
+  }
+
+  // Does it have any bits at or above at?
+  private static boolean reaches(Big big, BigInteger at) {
+    return big.index().add(big.length()).compareTo(at) > 0;
+  }
+
+  // Do they overlap - or touch without either being a Run?
+  static boolean joins(Big low, Big high) {
+    return joins(low, high, BYTES);
+  }
+
+  // The same but Bigs closer than the granularity join up too.
+  private static boolean joins(Big low, Big high, int granularity) {
+    if (low instanceof Run || high instanceof Run) {
+      return end(low).compareTo(high.index()) > 0;
     }
-    return index;
+    return end(low).add(BigInteger.valueOf(8L * (granularity - 1))).compareTo(high.index()) >= 0;
   }
 
   @Override
   public Sparse.Iterator<Big, BigInteger> iterator() {
-    return new HugeBitsIterator(bits.values().iterator());
+    return new HugeBitsIterator(bits);
   }
 
   @Override
@@ -196,26 +220,142 @@ public class HugeBits extends Bits<Big> {
     return new HugeBitsIterator(bits.descendingMap().values().iterator());
   }
 
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator(BigInteger from, BigInteger to) {
+    return new HugeBitsIterator(bits.subMap(from, true, to, false));
+  }
+
+  @Override
+  BigInteger boundary(BigInteger at) {
+    // Only the one just below can straddle it.
+    Map.Entry<BigInteger, Big> below = bits.lowerEntry(at);
+    return below != null && end(below.getValue()).compareTo(at) > 0 ? below.getKey() : at;
+  }
+
+  @Override
+  Big floor(BigInteger at) {
+    Map.Entry<BigInteger, Big> floor = bits.floorEntry(at);
+    return floor == null ? null : floor.getValue();
+  }
+
+  @Override
+  Big higher(BigInteger at) {
+    Map.Entry<BigInteger, Big> higher = bits.higherEntry(at);
+    return higher == null ? null : higher.getValue();
+  }
+
+  /*
+   * Join HugeBits that lie one after the other.
+   *
+   * Bigs that touch across a join are joined up and then the parts are
+   * put into one TreeMap in order.
+   */
+  static HugeBits concat(List<HugeBits> parts) {
+    HugeBits last = null;
+    for (HugeBits part : parts) {
+      if (!part.bits.isEmpty()) {
+        if (last != null) {
+          Map.Entry<BigInteger, Big> top = last.bits.lastEntry();
+          Map.Entry<BigInteger, Big> bottom = part.bits.firstEntry();
+          Big joined = touching(top.getValue(), bottom.getValue());
+          if (joined != null) {
+            // Move the top one up into the next part - joined.
+            last.bits.remove(top.getKey());
+            part.bits.remove(bottom.getKey());
+            part.bits.put(top.getKey(), joined);
+            last.length = null;
+            part.length = null;
+            last.ranks = null;
+            part.ranks = null;
+          }
+        }
+        last = part;
+      }
+    }
+    HugeBits joined = new HugeBits();
+    for (HugeBits part : parts) {
+      // All above what is there already so each one goes in on the right edge.
+      joined.bits.putAll(part.bits);
+    }
+    return joined;
+  }
+
+  // How many Bigs.
+  public int size() {
+    return bits.size();
+  }
+
+  // How many bits are set below bit.
+  public BigInteger rank(BigInteger bit) {
+    return ranks().rank(bit);
+  }
+
+  // Where the k'th set bit is counting from 0 - -1 if there are not that many.
+  public BigInteger select(BigInteger k) {
+    if (k.signum() < 0) {
+      throw new IllegalArgumentException("Negative select " + k);
+    }
+    return ranks().select(k);
+  }
+
+  private RankIndex ranks() {
+    if (ranks == null) {
+      ranks = new RankIndex(bits);
+    }
+    return ranks;
+  }
+
   @Override
   public BigInteger length() {
-    Map.Entry<BigInteger, Big> lastEntry = bits.lastEntry();
-    if (lastEntry == null) {
-      return BigInteger.ZERO;
+    if (length == null) {
+      Map.Entry<BigInteger, Big> lastEntry = bits.lastEntry();
+      if (lastEntry == null) {
+        return BigInteger.ZERO;
+      }
+      Big last = lastEntry.getValue();
+      length = last.index().add(last.length());
     }
-    Big last = lastEntry.getValue();
-    return last.index().add(last.length());
+    return length;
   }
 
   class HugeBitsIterator extends Bits.BitsIterator {
+    // What we are walking - null going backwards.
+    private final NavigableMap<BigInteger, Big> map;
     private Iterator<Big> it;
+    // Index of the last one taken - skipTo never goes back past it.
+    private BigInteger last = null;
+
+    private HugeBitsIterator(NavigableMap<BigInteger, Big> map) {
+      this.map = map;
+      this.it = map.values().iterator();
+    }
 
     private HugeBitsIterator(Iterator<Big> it) {
+      this.map = null;
       this.it = it;
     }
 
     @Override
     protected void getNext() {
-      next = it.hasNext() ? it.next() : null;
+      Big big = it.hasNext() ? it.next() : null;
+      if (big != null) {
+        last = big.index();
+      }
+      next = big;
+    }
+
+    // Straight there through the map.
+    @Override
+    public void skipTo(BigInteger at) {
+      if (map == null || next != null && reaches((Big) next, at)) {
+        super.skipTo(at);
+        return;
+      }
+      // Only the one just below can reach up to it.
+      Map.Entry<BigInteger, Big> below = map.lowerEntry(at);
+      BigInteger from = below != null && reaches(below.getValue(), at) ? below.getKey() : at;
+      next = null;
+      it = (last != null && from.compareTo(last) <= 0 ? map.tailMap(last, false) : map.tailMap(from, true)).values().iterator();
     }
 
     @Override
@@ -225,6 +365,343 @@ public class HugeBits extends Bits<Big> {
 
   }
 
+  /**
+   * Builds a HugeBits from lots of Bigs in any order.
+   *
+   * Everything is sorted once and then merged in one pass so loading
+   * n Bigs costs n log n rather than a normalise per Big. Bigs that
+   * overlap are added together - as add does.
+   */
+  public static class Builder {
+    // Lowest index first.
+    private static final Comparator<Big> BY_INDEX = new Comparator<Big>() {
+      @Override
+      public int compare(Big a, Big b) {
+        return a.index().compareTo(b.index());
+      }
+
+    };
+    // Everything so far.
+    private final ArrayList<Big> bigs = new ArrayList<>();
+    private int granularity = BYTES;
+
+    // Split at that many zero bytes - BYTES or WORDS.
+    public Builder granularity(int granularity) {
+      if (granularity < BYTES) {
+        throw new IllegalArgumentException("Granularity " + granularity);
+      }
+      this.granularity = granularity;
+      return this;
+    }
+
+    public Builder add(Big big) {
+      bigs.add(big);
+      return this;
+    }
+
+    public Builder add(Big... bigs) {
+      return add(Arrays.asList(bigs));
+    }
+
+    public Builder add(Iterable<Big> bigs) {
+      for (Big big : bigs) {
+        add(big);
+      }
+      return this;
+    }
+
+    public HugeBits build() {
+      Collections.sort(bigs, BY_INDEX);
+      Appender out = new Appender(granularity);
+      // The sum of a run of overlapping Bigs.
+      Big sum = null;
+      for (Big big : bigs) {
+        if (sum != null && big.index().compareTo(end(sum)) < 0) {
+          // Overlaps - add it in.
+          sum = sum(sum, big);
+        } else {
+          // Clear of the last lot.
+          if (sum != null) {
+            out.write(sum);
+          }
+          sum = big;
+        }
+      }
+      if (sum != null) {
+        out.write(sum);
+      }
+      // Can start again.
+      bigs.clear();
+      return out.done();
+    }
+
+  }
+
+  /**
+   * Builds a HugeBits from bytes delivered in ascending order.
+   *
+   * Runs of non-zero bytes become Bigs and zero bytes just separate them
+   * so the result is normalised as it is written - no normalise needed.
+   * A long enough fill of one byte becomes a Run.
+   *
+   * With a coarser granularity fewer zero bytes than that are kept
+   * inside the Big rather than splitting it.
+   */
+  static class Appender {
+    // Fewer bytes than this are not worth a Run.
+    private static final BigInteger RUN = BigInteger.valueOf(32);
+    // For spotting a zero byte in a word.
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    // Split at this many zero bytes.
+    private final int gap;
+    // What we are building.
+    private final HugeBits bits;
+    // Bit index of buf[0] - NO_INDEX once it reaches BigCursor.LIMIT.
+    private long at = 0;
+    // The same once it is too big for a long.
+    private BigInteger base = null;
+    // The current run of non-zero bytes - least significant first.
+    private byte[] buf = new byte[16];
+    private int len = 0;
+    // Zero bytes written since the end of the run.
+    private long zeros = 0;
+    // The last Run - the next may carry on from it.
+    private Run run = null;
+
+    Appender() {
+      this(BYTES);
+    }
+
+    Appender(int gap) {
+      this.gap = gap;
+      this.bits = new HugeBits(gap);
+    }
+
+    // Bit index of the next byte to write.
+    BigInteger position() {
+      long p = positionAsLong();
+      return p != Sparse.NO_INDEX ? BigInteger.valueOf(p) : base().add(BigInteger.valueOf(len).add(BigInteger.valueOf(zeros)).multiply(EIGHT));
+    }
+
+    // The same as a long - NO_INDEX if it may not fit.
+    private long positionAsLong() {
+      if (at == Sparse.NO_INDEX || zeros >= 1L << 40) {
+        return Sparse.NO_INDEX;
+      }
+      long p = at + 8L * (len + zeros);
+      return p < BigCursor.LIMIT ? p : Sparse.NO_INDEX;
+    }
+
+    private BigInteger base() {
+      return at != Sparse.NO_INDEX ? BigInteger.valueOf(at) : base;
+    }
+
+    private void base(BigInteger base) {
+      if (base.signum() >= 0 && base.bitLength() < 63) {
+        at = base.longValue();
+        this.base = null;
+      } else {
+        at = Sparse.NO_INDEX;
+        this.base = base;
+      }
+    }
+
+    // Move up to a bit index - must be byte aligned and not behind us.
+    void skipTo(BigInteger at) {
+      if (len == 0) {
+        // Nothing pending - just move.
+        base(at);
+        zeros = 0;
+      } else {
+        BigInteger ahead = at.subtract(position()).divide(EIGHT);
+        if (ahead.signum() != 0 || zeros > 0) {
+          jump(ahead.bitLength() < 32 ? zeros + ahead.longValue() : Long.MAX_VALUE, at);
+        }
+      }
+    }
+
+    // Zero bytes up to at - only the end of the run if there are enough.
+    private void jump(long zeros, BigInteger at) {
+      if (zeros < gap) {
+        this.zeros = zeros;
+      } else {
+        // Jumped away from the run - it is finished.
+        flush();
+        base(at);
+      }
+    }
+
+    // Move up to where the cursor is.
+    void skipTo(BigCursor c) {
+      if (!skipTo(c.startAsLong())) {
+        skipTo(c.start());
+      }
+    }
+
+    // The same in longs - false if they will not do.
+    private boolean skipTo(long to) {
+      long p = positionAsLong();
+      if (to == Sparse.NO_INDEX || p == Sparse.NO_INDEX) {
+        return false;
+      }
+      if (len == 0) {
+        at = to;
+        base = null;
+        zeros = 0;
+      } else if (zeros > 0 || to != p) {
+        long more = zeros + (to - p) / 8;
+        if (more < gap) {
+          zeros = more;
+        } else {
+          flush();
+          at = to;
+          base = null;
+        }
+      }
+      return true;
+    }
+
+    // Write n zero bytes.
+    void skip(long n) {
+      zeros += n;
+    }
+
+    // Write a whole Big - must not be behind us.
+    void write(Big big) {
+      if (!skipTo(big.indexAsLong())) {
+        skipTo(big.index());
+      }
+      if (big instanceof Run) {
+        fill(((Run) big).fill(), ((Run) big).count());
+      } else {
+        byte[] bytes = big.bytes();
+        int i = 0;
+        for (; i + 8 <= bytes.length; i += 8) {
+          write(Big.word(bytes, i));
+        }
+        for (; i < bytes.length; i++) {
+          write(bytes[i]);
+        }
+      }
+    }
+
+    // Write n of the same byte - as a Run if there are enough.
+    void fill(byte b, BigInteger n) {
+      if (b == 0) {
+        skipTo(position().add(n.multiply(EIGHT)));
+      } else if (n.compareTo(RUN) < 0) {
+        for (int i = n.intValue(); i > 0; i--) {
+          write(b);
+        }
+      } else {
+        if (zeros == 0) {
+          // Take the same bytes off the end of the current run of bytes.
+          for (; len > 0 && buf[len - 1] == b; len--) {
+            n = n.add(BigInteger.ONE);
+          }
+        }
+        BigInteger from = position();
+        flush();
+        if (run != null && run.fill() == b && run.end().equals(from)) {
+          // Carries straight on from the last one.
+          run = new Run(run.index(), run.count().add(n), b);
+        } else {
+          run = new Run(from, n, b);
+        }
+        bits.bits.put(run.index(), run);
+        base(run.end());
+      }
+    }
+
+    // Write the next byte.
+    void write(byte b) {
+      if (b != 0) {
+        if (zeros > 0) {
+          if (len > 0 && zeros < gap) {
+            // Too short a gap - keep it in.
+            room((int) zeros + 1);
+            len += (int) zeros;
+            Arrays.fill(buf, len - (int) zeros, len, (byte) 0);
+            zeros = 0;
+          } else {
+            // A zero gap ended the old run.
+            flush();
+          }
+        }
+        room(1);
+        buf[len++] = b;
+      } else {
+        zeros += 1;
+      }
+    }
+
+    // Write the next 8 bytes - least significant first.
+    void write(long w) {
+      if (w == 0) {
+        zeros += 8;
+      } else if (zeros == 0 && ((w - ONES) & ~w & HIGHS) == 0) {
+        // No zero bytes - straight on the end of the run.
+        room(8);
+        for (int i = 0; i < 8; i++, w >>>= 8) {
+          buf[len++] = (byte) w;
+        }
+      } else {
+        for (int i = 0; i < 8; i++, w >>>= 8) {
+          write((byte) w);
+        }
+      }
+    }
+
+    // Make room for n more bytes.
+    private void room(int n) {
+      if (len + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(len * 2, len + n));
+      }
+    }
+
+    // Move the Bigs that are finished out to to - the last Run may carry on unless we are done.
+    void drainTo(Collection<Big> to, boolean done) {
+      if (done) {
+        flush();
+      }
+      for (Map.Entry<BigInteger, Big> first = bits.bits.firstEntry();
+              first != null && (done || first.getValue() != run || !run.end().equals(position()));
+              first = bits.bits.firstEntry()) {
+        to.add(bits.bits.pollFirstEntry().getValue());
+      }
+    }
+
+    // Finished.
+    HugeBits done() {
+      flush();
+      return bits;
+    }
+
+    private void flush() {
+      if (len > 0) {
+        // Most significant first for BigInteger.
+        byte[] be = new byte[len];
+        for (int i = 0; i < len; i++) {
+          be[i] = buf[len - 1 - i];
+        }
+        BigInteger base = base();
+        bits.bits.put(base, new Big(base, new BigInteger(1, be)));
+      }
+      // Step the base past it all.
+      long p = positionAsLong();
+      if (p != Sparse.NO_INDEX) {
+        at = p;
+        base = null;
+      } else {
+        base(position());
+      }
+      len = 0;
+      zeros = 0;
+    }
+
+  }
+
   public static void main(String[] args) {
     HugeBits i = new HugeBits(
             new Big(BigInteger.ZERO, new BigInteger(new byte[]{1, 0, 1, 1, 0, 0, 0, 1})));
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bits that live in a memory mapped file rather than on the heap.
+ *
+ * The file is a header, then the values packed end to end (most
+ * significant byte first), then a directory with one fixed size entry
+ * per Big - its byte index, where its value is and how long it is - in
+ * index order. A Run is never built - its value is just its fill byte and
+ * its length is minus its count. Opening one just maps it so it can be far bigger than
+ * the heap or even RAM. Each Big is decoded from the mapping as it is
+ * iterated and ranges are found by a binary search of the directory.
+ *
+ * Byte indexes must fit in a long.
+ *
+ * The mapping goes when the MappedBits is collected - there is no way
+ * to drop it sooner.
+ *
+ * @author OldCurmudgeon.
+ */
+public class MappedBits extends Bits<Big> {
+  // "HugeBits" in ASCII.
+  private static final long MAGIC = 0x4875676542697473L;
+  private static final int VERSION = 2;
+  // Before Runs - the same but without them.
+  private static final int VERSION_1 = 1;
+  // Magic, version, spare, count and where the directory starts.
+  private static final int HEADER = 32;
+  // Byte index, offset and length of each Big.
+  private static final int ENTRY = 24;
+  // Map 1GB at a time.
+  private static final int SHIFT = 30;
+  // Where it all is.
+  private final Region region;
+  // How many Bigs.
+  private final long count;
+  // Where the directory starts.
+  private final long directory;
+  // Worked out when opened.
+  private final BigInteger length;
+
+  private MappedBits(Region region) throws IOException {
+    this.region = region;
+    if (region.size < HEADER || region.getLong(0) != MAGIC) {
+      throw new IOException("Not a MappedBits file");
+    }
+    long version = region.getLong(8) >>> 32;
+    if (version != VERSION && version != VERSION_1) {
+      throw new IOException("Unknown MappedBits version " + (region.getLong(8) >>> 32));
+    }
+    this.count = region.getLong(16);
+    this.directory = region.getLong(24);
+    if (directory + count * ENTRY != region.size) {
+      throw new IOException("MappedBits file is truncated");
+    }
+    this.length = count == 0 ? BigInteger.ZERO : end(count - 1);
+  }
+
+  // Open one that has already been written.
+  public static MappedBits open(File file) throws IOException {
+    return open(file, SHIFT);
+  }
+
+  // Open one mapping 2^shift bytes at a time.
+  static MappedBits open(File file, int shift) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      // The mapping stays after the file is closed.
+      return new MappedBits(new Region(raf.getChannel(), shift));
+    }
+  }
+
+  // Write them to a temp file and map it.
+  public static MappedBits of(Bits<Big> bits) throws IOException {
+    File file = File.createTempFile("bits", ".map");
+    file.deleteOnExit();
+    return write(bits, file);
+  }
+
+  /*
+   * Write them to the file and map it.
+   *
+   * The directory can be big too so it goes into a temp file of its own
+   * while the values are written and is tacked on the end afterwards.
+   */
+  public static MappedBits write(Bits<Big> bits, File file) throws IOException {
+    File dir = File.createTempFile("bits", ".dir");
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            RandomAccessFile rad = new RandomAccessFile(dir, "rw")) {
+      raf.setLength(0);
+      FileChannel channel = raf.getChannel();
+      Output values = new Output(channel);
+      Output entries = new Output(rad.getChannel());
+      // Header goes in when we know what to put there.
+      values.skip(HEADER);
+      long count = 0;
+      for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+        Big big = i.next();
+        if (big.length().signum() == 0) {
+          // Nothing to write - a BigBits of zero has one.
+          continue;
+        }
+        if (big.index().bitLength() > 66) {
+          throw new ArithmeticException("Index too big for MappedBits: " + big.index());
+        }
+        entries.putLong(big.index().shiftRight(3).longValue());
+        entries.putLong(values.position());
+        if (big instanceof Run) {
+          Run run = (Run) big;
+          if (run.count().bitLength() > 63) {
+            throw new ArithmeticException("Run too long for MappedBits: " + run.count() + " bytes.");
+          }
+          entries.putLong(-run.count().longValue());
+          values.put(new byte[]{run.fill()}, 0, 1);
+        } else {
+          byte[] be = big.value().toByteArray();
+          // Drop the sign byte.
+          int from = be[0] == 0 ? 1 : 0;
+          entries.putLong(be.length - from);
+          values.put(be, from, be.length - from);
+        }
+        count += 1;
+      }
+      long directory = values.position();
+      values.flush();
+      entries.flush();
+      // Directory on the end - transferFrom does nothing past the end of the file.
+      raf.setLength(directory);
+      FileChannel dirChannel = rad.getChannel();
+      for (long done = 0, size = dirChannel.size(); done < size;) {
+        long moved = channel.transferFrom(dirChannel.position(done), directory + done, size - done);
+        if (moved <= 0) {
+          throw new IOException("Directory copy stuck at " + done + " of " + size + " bytes.");
+        }
+        done += moved;
+      }
+      // Header on the front.
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putLong(MAGIC).putInt(VERSION).putInt(0).putLong(count).putLong(directory).flip();
+      channel.write(header, 0);
+    } finally {
+      dir.delete();
+    }
+    return open(file);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator() {
+    return new MappedBitsIterator(0, count, false);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> reverseIterator() {
+    return new MappedBitsIterator(0, count, true);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator(BigInteger from, BigInteger to) {
+    return new MappedBitsIterator(search(from), search(to), false);
+  }
+
+  @Override
+  BigInteger boundary(BigInteger at) {
+    // The last one starting below it.
+    long below = search(at) - 1;
+    return below >= 0 && end(below).compareTo(at) > 0 ? index(below) : at;
+  }
+
+  @Override
+  Big floor(BigInteger at) {
+    // Just below the first one above it.
+    long floor = search(at.add(BigInteger.ONE)) - 1;
+    return floor >= 0 ? big(floor) : null;
+  }
+
+  @Override
+  Big higher(BigInteger at) {
+    long higher = search(at.add(BigInteger.ONE));
+    return higher < count ? big(higher) : null;
+  }
+
+  @Override
+  public BigInteger length() {
+    return length;
+  }
+
+  // How many Bigs.
+  public long size() {
+    return count;
+  }
+
+  // Where entry i is.
+  private long entry(long i) {
+    return directory + i * ENTRY;
+  }
+
+  // Bit index of Big i.
+  private BigInteger index(long i) {
+    return BigInteger.valueOf(region.getLong(entry(i))).shiftLeft(3);
+  }
+
+  // Bit index just past the top bit of Big i.
+  private BigInteger end(long i) {
+    long e = entry(i);
+    // How many bytes - minus for a Run.
+    long bytes = Math.abs(region.getLong(e + 16));
+    // Top byte is first - the fill of a Run.
+    int top = region.get(region.getLong(e + 8)) & 0xFF;
+    return index(i).add(BigInteger.valueOf(bytes - 1).shiftLeft(3)).add(BigInteger.valueOf(32 - Integer.numberOfLeadingZeros(top)));
+  }
+
+  // Decode Big i.
+  private Big big(long i) {
+    long e = entry(i);
+    long bytes = region.getLong(e + 16);
+    if (bytes < 0) {
+      return new Run(index(i), BigInteger.valueOf(-bytes), region.get(region.getLong(e + 8)));
+    }
+    byte[] be = new byte[(int) bytes];
+    region.get(region.getLong(e + 8), be);
+    return new Big(index(i), new BigInteger(1, be));
+  }
+
+  // The first entry at or above that bit index.
+  private long search(BigInteger at) {
+    if (at.signum() <= 0) {
+      return 0;
+    }
+    BigInteger bytes = at.add(BigInteger.valueOf(7)).shiftRight(3);
+    if (bytes.bitLength() > 63) {
+      return count;
+    }
+    long key = bytes.longValue();
+    long lo = 0;
+    long hi = count;
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (region.getLong(entry(mid)) < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private class MappedBitsIterator extends BitsIterator {
+    // Entries still to do - from up to (not including) to.
+    private long from;
+    private long to;
+    private final boolean reverse;
+
+    MappedBitsIterator(long from, long to, boolean reverse) {
+      this.from = from;
+      this.to = to;
+      this.reverse = reverse;
+    }
+
+    @Override
+    protected void getNext() {
+      if (from < to) {
+        next = big(reverse ? --to : from++);
+      }
+    }
+
+    /*
+     * Gallop up the directory - steps of 1, 2, 4 ... until one reaches
+     * at and then a binary search back. Skipping n costs log n however
+     * big the file is.
+     */
+    @Override
+    public void skipTo(BigInteger at) {
+      if (reverse || next != null && next.index().add(next.length()).compareTo(at) > 0) {
+        super.skipTo(at);
+        return;
+      }
+      next = null;
+      // Below lo is all below at - hi is the first we know reaches it.
+      long lo = from;
+      long hi = from;
+      for (long step = 1; hi < to && end(hi).compareTo(at) <= 0; step <<= 1) {
+        lo = hi + 1;
+        hi = Math.min(from + step, to);
+      }
+      while (lo < hi) {
+        long mid = (lo + hi) >>> 1;
+        if (end(mid).compareTo(at) <= 0) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      from = lo;
+    }
+
+  }
+
+  // A file mapped a piece at a time - a MappedByteBuffer only reaches 2GB.
+  private static class Region {
+    private final int shift;
+    private final long mask;
+    private final MappedByteBuffer[] maps;
+    private final long size;
+
+    Region(FileChannel channel, int shift) throws IOException {
+      this.shift = shift;
+      this.mask = (1L << shift) - 1;
+      this.size = channel.size();
+      maps = new MappedByteBuffer[(int) ((size + mask) >>> shift)];
+      for (int i = 0; i < maps.length; i++) {
+        long at = (long) i << shift;
+        maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(mask + 1, size - at));
+      }
+    }
+
+    byte get(long at) {
+      return maps[(int) (at >>> shift)].get((int) (at & mask));
+    }
+
+    long getLong(long at) {
+      MappedByteBuffer map = maps[(int) (at >>> shift)];
+      int in = (int) (at & mask);
+      if (in + 8 <= map.limit()) {
+        return map.getLong(in);
+      }
+      // Across two maps.
+      long v = 0;
+      for (int i = 0; i < 8; i++) {
+        v = (v << 8) | (get(at + i) & 0xFF);
+      }
+      return v;
+    }
+
+    void get(long at, byte[] into) {
+      for (int done = 0; done < into.length;) {
+        // Our own view so it does not matter who else is reading.
+        ByteBuffer map = maps[(int) (at >>> shift)].duplicate();
+        map.position((int) (at & mask));
+        int n = Math.min(map.remaining(), into.length - done);
+        map.get(into, done, n);
+        done += n;
+        at += n;
+      }
+    }
+
+  }
+
+  // Buffered writes to a channel.
+  private static class Output {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private long position = 0;
+
+    Output(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    // Including what is still in the buffer.
+    long position() {
+      return position + buffer.position();
+    }
+
+    void skip(int n) throws IOException {
+      flush();
+      position += n;
+    }
+
+    void putLong(long v) throws IOException {
+      if (buffer.remaining() < 8) {
+        flush();
+      }
+      buffer.putLong(v);
+    }
+
+    void put(byte[] bytes, int from, int n) throws IOException {
+      while (n > 0) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        int m = Math.min(n, buffer.remaining());
+        buffer.put(bytes, from, m);
+        from += m;
+        n -= m;
+      }
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+      buffer.clear();
+    }
+
+  }
+
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable Bits that share structure between versions.
+ *
+ * The Bigs are held in a treap keyed by index. Nothing is ever changed -
+ * add and apply copy only the path down to what they touch and share
+ * every other subtree with what they were made from. Keeping many
+ * versions of a slowly changing number costs little more than the
+ * changes.
+ *
+ * Priorities come from a hash of the index so the same Bigs always make
+ * the same shape whatever order they arrived in.
+ *
+ * The Bigs are normalised as in HugeBits.
+ *
+ * @author OldCurmudgeon.
+ */
+public class PersistentBits extends Bits<Big> {
+  public static final PersistentBits EMPTY = new PersistentBits(null);
+  // The tree - null if empty.
+  private final Node root;
+
+  private PersistentBits(Node root) {
+    this.root = root;
+  }
+
+  // Make one from any other Bits.
+  public static PersistentBits of(Bits<Big> bits) {
+    if (bits instanceof PersistentBits) {
+      return (PersistentBits) bits;
+    }
+    // Anything else may not be normalised - or with nothing does that.
+    HugeBits normal = bits instanceof HugeBits ? (HugeBits) bits : (HugeBits) Bits.apply(bits, new HugeBits(), Op.or);
+    return new PersistentBits(build(normal.iterator()));
+  }
+
+  /*
+   * A new version with big added in - this one is unchanged.
+   *
+   * Only the region around it can change - as in HugeBits.normalise. The
+   * Bigs are summed while there are no Runs among them. Once there is one
+   * they are just gathered - as far as a carry could reach, and whatever
+   * touches the bottom - and added byte by byte so the Runs are never built.
+   */
+  public PersistentBits add(Big big) {
+    if (big.length().signum() == 0) {
+      return this;
+    }
+    List<Big> region = new ArrayList<>();
+    // The sum so far - null once there is a Run in it.
+    Big sum = big instanceof Run ? null : big;
+    BigInteger top = big.end();
+    Node below = floor(root, big.index());
+    boolean joined = below != null && HugeBits.joins(below.big, big);
+    if (joined) {
+      region.add(below.big);
+      sum = HugeBits.sumUnlessRun(sum, below.big);
+      top = top.max(below.big.end());
+    }
+    // Not at the index of the sum - a carry can move that up.
+    BigInteger from = joined ? below.key() : big.index();
+    Node[] split = split(root, from);
+    Node rest = joined ? removeFirst(split[1]) : split[1];
+    for (Node above = first(rest); above != null && (sum != null ? HugeBits.joins(sum, above.big) : reached(top, above.big)); above = first(rest)) {
+      region.add(above.big);
+      sum = HugeBits.sumUnlessRun(sum, above.big);
+      top = top.max(above.big.end());
+      rest = removeFirst(rest);
+    }
+    Node low = split[0];
+    // What comes out of a Run may not be a Run so whatever touches the bottom comes too.
+    for (Node lower = lower(low, from); sum == null && lower != null && lower.big.end().compareTo(from) >= 0; lower = lower(low, from)) {
+      region.add(0, lower.big);
+      from = lower.key();
+      low = split(low, from)[0];
+    }
+    HugeBits.Appender out = new HugeBits.Appender();
+    if (sum != null) {
+      out.write(sum);
+    } else {
+      BigInteger carryAt = Bits.arithmetic(new BigCursor(HugeBits.of(region).iterator()), new BigCursor(HugeBits.of(Arrays.asList(big)).iterator()), false, out);
+      if (carryAt != null) {
+        out.skipTo(carryAt);
+        out.write((byte) 1);
+      }
+    }
+    return new PersistentBits(join(join(low, build(out.done().iterator())), rest));
+  }
+
+  // Could a carry off top - or the byte after it - reach that one?
+  private static boolean reached(BigInteger top, Big big) {
+    return big.index().compareTo(top.add(EIGHT)) <= 0;
+  }
+
+  /*
+   * Applies the op keeping as much of the bigger one as possible.
+   *
+   * The smaller one is walked in clusters - Bigs that overlap or touch
+   * each other or the same Bigs of the bigger one. Each cluster's region
+   * is cut out of the bigger one, merged and put back. What lies between
+   * the regions is shared if the op keeps it and dropped if not.
+   *
+   * A region runs until the next Big of either is at least a byte clear
+   * so whatever is put back cannot need joining to its neighbours.
+   */
+  static PersistentBits apply(PersistentBits a, PersistentBits b, Op op) {
+    if (size(a.root) < size(b.root)) {
+      // All the ops are symmetric.
+      return apply(b, a, op);
+    }
+    Node rest = a.root;
+    Node done = null;
+    Sparse.Iterator<Big, BigInteger> bs = b.iterator();
+    Big x = bs.next();
+    while (x != null) {
+      BigInteger lo = x.index();
+      BigInteger hi = x.end();
+      // Down over any of ours that reach or touch it.
+      for (Node under = lower(rest, lo); under != null && under.big.end().compareTo(lo) >= 0; under = lower(rest, lo)) {
+        lo = under.key();
+      }
+      // Up until neither reaches or touches the top.
+      for (boolean grew = true; grew;) {
+        grew = false;
+        for (; x != null && x.index().compareTo(hi) <= 0; x = bs.next()) {
+          hi = hi.max(x.end());
+          grew = true;
+        }
+        Node top = floor(rest, hi);
+        if (top != null && top.big.end().compareTo(hi) > 0) {
+          hi = top.big.end();
+          grew = true;
+        }
+      }
+      Node[] before = split(rest, lo);
+      Node[] region = split(before[1], hi);
+      if (op.keepA) {
+        done = join(done, before[0]);
+      }
+      rest = region[1];
+      // Merge just the region.
+      HugeBits.Appender out = new HugeBits.Appender();
+      merge(new BigCursor(new PersistentBits(region[0]).iterator()), new BigCursor(b.iterator(lo, hi)), op, out);
+      done = join(done, build(out.done().iterator()));
+    }
+    if (op.keepA) {
+      done = join(done, rest);
+    }
+    return new PersistentBits(done);
+  }
+
+  // How many Bigs.
+  public int size() {
+    return size(root);
+  }
+
+  // How many of our Bigs are in nodes shared with other.
+  int shared(PersistentBits other) {
+    Set<Node> theirs = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    ArrayDeque<Node> todo = new ArrayDeque<>();
+    push(todo, other.root);
+    while (!todo.isEmpty()) {
+      Node n = todo.pop();
+      theirs.add(n);
+      push(todo, n.left);
+      push(todo, n.right);
+    }
+    int shared = 0;
+    push(todo, root);
+    while (!todo.isEmpty()) {
+      Node n = todo.pop();
+      if (theirs.contains(n)) {
+        // All of it.
+        shared += n.size;
+      } else {
+        push(todo, n.left);
+        push(todo, n.right);
+      }
+    }
+    return shared;
+  }
+
+  private static void push(ArrayDeque<Node> todo, Node n) {
+    if (n != null) {
+      todo.push(n);
+    }
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator() {
+    return new PersistentBitsIterator(null, null, false);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> reverseIterator() {
+    return new PersistentBitsIterator(null, null, true);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator(BigInteger from, BigInteger to) {
+    return new PersistentBitsIterator(from, to, false);
+  }
+
+  @Override
+  public BigInteger length() {
+    Node last = root;
+    if (last == null) {
+      return BigInteger.ZERO;
+    }
+    while (last.right != null) {
+      last = last.right;
+    }
+    return last.key().add(last.big.length());
+  }
+
+  @Override
+  BigInteger boundary(BigInteger at) {
+    // Only the one just below can straddle it.
+    Node below = lower(root, at);
+    return below != null && below.big.end().compareTo(at) > 0 ? below.key() : at;
+  }
+
+  @Override
+  Big floor(BigInteger at) {
+    Node floor = floor(root, at);
+    return floor == null ? null : floor.big;
+  }
+
+  @Override
+  Big higher(BigInteger at) {
+    Node higher = higher(root, at);
+    return higher == null ? null : higher.big;
+  }
+
+  /*
+   * The treap - every operation makes new nodes rather than changing any.
+   */
+  private static final class Node {
+    final Big big;
+    final int priority;
+    final Node left;
+    final Node right;
+    // How many in this subtree.
+    final int size;
+
+    Node(Big big, int priority, Node left, Node right) {
+      this.big = big;
+      this.priority = priority;
+      this.left = left;
+      this.right = right;
+      this.size = 1 + size(left) + size(right);
+    }
+
+    BigInteger key() {
+      return big.index();
+    }
+
+    // Me with different children - or me if they are the same.
+    Node with(Node left, Node right) {
+      return left == this.left && right == this.right ? this : new Node(big, priority, left, right);
+    }
+
+  }
+
+  private static Node leaf(Big big) {
+    // Spread the hash - indexes are all multiples of 8.
+    int h = big.index().hashCode() * 0x9E3779B9;
+    return new Node(big, h ^ (h >>> 16), null, null);
+  }
+
+  private static int size(Node n) {
+    return n == null ? 0 : n.size;
+  }
+
+  // Should a be above b - ties go to the lower index.
+  private static boolean above(Node a, Node b) {
+    return a.priority != b.priority ? a.priority > b.priority : a.key().compareTo(b.key()) < 0;
+  }
+
+  // Those below key and those at or above it.
+  private static Node[] split(Node n, BigInteger key) {
+    if (n == null) {
+      return new Node[2];
+    }
+    if (n.key().compareTo(key) < 0) {
+      Node[] s = split(n.right, key);
+      return new Node[]{n.with(n.left, s[0]), s[1]};
+    }
+    Node[] s = split(n.left, key);
+    return new Node[]{s[0], n.with(s[1], n.right)};
+  }
+
+  // Everything in low must be below everything in high.
+  private static Node join(Node low, Node high) {
+    if (low == null) {
+      return high;
+    }
+    if (high == null) {
+      return low;
+    }
+    if (above(low, high)) {
+      return low.with(low.left, join(low.right, high));
+    }
+    return high.with(join(low, high.left), high.right);
+  }
+
+  private static Node removeFirst(Node n) {
+    return n.left == null ? n.right : n.with(removeFirst(n.left), n.right);
+  }
+
+  private static Node first(Node n) {
+    if (n != null) {
+      while (n.left != null) {
+        n = n.left;
+      }
+    }
+    return n;
+  }
+
+  // Bigs in ascending order.
+  private static Node build(Sparse.Iterator<Big, BigInteger> it) {
+    Node built = null;
+    while (it.hasNext()) {
+      // Only walks down the right edge.
+      built = join(built, leaf(it.next()));
+    }
+    return built;
+  }
+
+  // The highest at or below key.
+  private static Node floor(Node n, BigInteger key) {
+    Node found = null;
+    while (n != null) {
+      int c = n.key().compareTo(key);
+      if (c == 0) {
+        return n;
+      }
+      if (c < 0) {
+        found = n;
+        n = n.right;
+      } else {
+        n = n.left;
+      }
+    }
+    return found;
+  }
+
+  // The highest below key.
+  private static Node lower(Node n, BigInteger key) {
+    Node found = null;
+    while (n != null) {
+      if (n.key().compareTo(key) < 0) {
+        found = n;
+        n = n.right;
+      } else {
+        n = n.left;
+      }
+    }
+    return found;
+  }
+
+  // The lowest above key.
+  private static Node higher(Node n, BigInteger key) {
+    Node found = null;
+    while (n != null) {
+      if (n.key().compareTo(key) > 0) {
+        found = n;
+        n = n.left;
+      } else {
+        n = n.right;
+      }
+    }
+    return found;
+  }
+
+  class PersistentBitsIterator extends Bits.BitsIterator {
+    // The path still to visit.
+    private final ArrayDeque<Node> path = new ArrayDeque<>();
+    // Start at from and stop at to - null for no limit.
+    private final BigInteger from;
+    private final BigInteger to;
+    private final boolean reverse;
+    // Index of the last one taken - skipTo never goes back past it.
+    private BigInteger last = null;
+
+    private PersistentBitsIterator(BigInteger from, BigInteger to, boolean reverse) {
+      this.from = from;
+      this.to = to;
+      this.reverse = reverse;
+      down(root, from);
+    }
+
+    // Push the path to the first at or above from.
+    private void down(Node n, BigInteger from) {
+      while (n != null) {
+        if (reverse) {
+          path.push(n);
+          n = n.right;
+        } else if (from == null || n.key().compareTo(from) >= 0) {
+          path.push(n);
+          n = n.left;
+        } else {
+          n = n.right;
+        }
+      }
+    }
+
+    @Override
+    protected void getNext() {
+      Node n = path.isEmpty() ? null : path.pop();
+      if (n != null && to != null && n.key().compareTo(to) >= 0) {
+        // Past the end.
+        path.clear();
+        n = null;
+      }
+      if (n != null) {
+        down(reverse ? n.left : n.right, null);
+        last = n.key();
+      }
+      next = n == null ? null : n.big;
+    }
+
+    // Straight there down the tree.
+    @Override
+    public void skipTo(BigInteger at) {
+      if (reverse || next != null && ((Big) next).index().add(((Big) next).length()).compareTo(at) > 0) {
+        super.skipTo(at);
+        return;
+      }
+      // Only the one just below can reach up to it.
+      Node below = lower(root, at);
+      BigInteger start = below != null && below.key().add(below.big.length()).compareTo(at) > 0 ? below.key() : at;
+      if (last != null && start.compareTo(last) <= 0) {
+        start = last.add(BigInteger.ONE);
+      }
+      if (from != null) {
+        start = start.max(from);
+      }
+      next = null;
+      path.clear();
+      down(root, start);
+    }
+
+    @Override
+    public String toString() {
+      return "[" + (next == null ? "" : next.toString()) + "]";
+    }
+
+  }
+
+}
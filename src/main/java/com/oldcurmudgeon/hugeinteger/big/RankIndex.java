@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Rank and select over the Bigs of a HugeBits.
+ *
+ * The Bigs are taken a block at a time and for each block we keep the
+ * index of its first Big and how many bits are set below it. Both go up
+ * so a binary search finds the block and then at most a block of Bigs
+ * are looked at.
+ *
+ * Blocks are only built as far as they are needed. A change throws away
+ * the block it is in and all above it - those below cannot have changed.
+ *
+ * @author OldCurmudgeon.
+ */
+class RankIndex {
+  // Bigs in a block.
+  static final int BLOCK = 64;
+  // The Bigs.
+  private final NavigableMap<BigInteger, Big> bits;
+  // First index of each block.
+  private BigInteger[] keys = new BigInteger[16];
+  // Bits set below each block.
+  private BigInteger[] ones = new BigInteger[16];
+  // How many blocks are built.
+  private int blocks = 0;
+  // Where the next block starts - null means from the bottom.
+  private BigInteger next = null;
+  // Bits set below next.
+  private BigInteger total = BigInteger.ZERO;
+  // Got to the top?
+  private boolean done = false;
+
+  RankIndex(NavigableMap<BigInteger, Big> bits) {
+    this.bits = bits;
+  }
+
+  // How many bits are set below bit.
+  BigInteger rank(BigInteger bit) {
+    // Build until the next block starts at or above it.
+    while (!done && (next == null || next.compareTo(bit) < 0)) {
+      extend();
+    }
+    // The last block starting below it.
+    int b = search(keys, bit, false);
+    if (b < 0) {
+      return BigInteger.ZERO;
+    }
+    BigInteger rank = ones[b];
+    for (Big big : bits.subMap(keys[b], true, bit, false).values()) {
+      rank = rank.add(big.rank(bit));
+    }
+    return rank;
+  }
+
+  // Where the k'th set bit is (from 0) - -1 if there are not that many.
+  BigInteger select(BigInteger k) {
+    while (!done && total.compareTo(k) <= 0) {
+      extend();
+    }
+    if (total.compareTo(k) <= 0) {
+      return BigInteger.ONE.negate();
+    }
+    // The last block with no more than k below it.
+    int b = search(ones, k, true);
+    BigInteger left = k.subtract(ones[b]);
+    for (Big big : bits.tailMap(keys[b], true).values()) {
+      BigInteger count = big.bitCount();
+      if (left.compareTo(count) < 0) {
+        return big.select(left);
+      }
+      left = left.subtract(count);
+    }
+    // The totals say it must be there.
+    throw new IllegalStateException("Rank index is broken at " + k);
+  }
+
+  // Something at or above key has changed.
+  void changed(BigInteger key) {
+    if (!done && next != null && key.compareTo(next) >= 0) {
+      // Not built that far.
+      return;
+    }
+    // Drop the block it is in and all above.
+    int b = search(keys, key, true);
+    if (b < 0) {
+      blocks = 0;
+      next = null;
+      total = BigInteger.ZERO;
+    } else {
+      blocks = b;
+      next = keys[b];
+      total = ones[b];
+    }
+    done = false;
+  }
+
+  // Build one more block.
+  private void extend() {
+    Map<BigInteger, Big> from = next == null ? bits : bits.tailMap(next, true);
+    int n = 0;
+    BigInteger first = null;
+    BigInteger count = total;
+    for (Map.Entry<BigInteger, Big> e : from.entrySet()) {
+      if (n == BLOCK) {
+        // Start of the next one.
+        add(first, total);
+        next = e.getKey();
+        total = count;
+        return;
+      }
+      if (first == null) {
+        first = e.getKey();
+      }
+      count = count.add(e.getValue().bitCount());
+      n += 1;
+    }
+    if (first != null) {
+      add(first, total);
+    }
+    total = count;
+    done = true;
+  }
+
+  private void add(BigInteger key, BigInteger below) {
+    if (blocks == keys.length) {
+      keys = Arrays.copyOf(keys, blocks * 2);
+      ones = Arrays.copyOf(ones, blocks * 2);
+    }
+    keys[blocks] = key;
+    ones[blocks++] = below;
+  }
+
+  // The last block whose value is below (or at if inclusive) v - -1 if none.
+  private int search(BigInteger[] values, BigInteger v, boolean inclusive) {
+    int lo = 0;
+    int hi = blocks;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = values[mid].compareTo(v);
+      if (c < 0 || inclusive && c == 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo - 1;
+  }
+
+}
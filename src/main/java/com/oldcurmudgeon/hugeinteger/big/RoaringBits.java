@@ -0,0 +1,252 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Bits implementation in the style of Roaring bitmaps.
+ *
+ * The bit space is cut into chunks of Container.BITS bits. Each chunk
+ * that has anything in it gets a Container that suits what it holds -
+ * see Container. The chunk numbers are kept in a sorted long[] so there
+ * is no boxing and no pointer chasing to find a chunk.
+ *
+ * Immutable - operations make new RoaringBits which share any chunks
+ * they did not change.
+ *
+ * Bit indexes must fit in a long.
+ *
+ * @author OldCurmudgeon.
+ */
+public class RoaringBits extends Bits<Big> {
+  // Chunk number to first bit index.
+  private static final int SHIFT = 16;
+  // The chunk numbers - ascending.
+  private final long[] keys;
+  // Their containers.
+  private final Container[] containers;
+  // How many of them there are.
+  private final int size;
+
+  private RoaringBits(long[] keys, Container[] containers, int size) {
+    this.keys = keys;
+    this.containers = containers;
+    this.size = size;
+  }
+
+  // Make one from any other Bits.
+  public static RoaringBits of(Bits<Big> bits) {
+    Chunks chunks = new Chunks(16);
+    // Fill in one chunk at a time as bitmap words.
+    long[] words = new long[Container.WORDS];
+    long key = -1;
+    for (BigCursor c = new BigCursor(bits.iterator()); c.hasData();) {
+      long p = bitIndex(c.start());
+      int n = c.remaining();
+      for (int i = 0; i < n; i++, p += 8) {
+        byte b = c.get(i);
+        if (b != 0) {
+          if (p >>> SHIFT != key) {
+            // Moved on to another chunk.
+            chunks.add(key, Container.of(words, true));
+            Arrays.fill(words, 0);
+            key = p >>> SHIFT;
+          }
+          int x = (int) (p & (Container.BITS - 1));
+          words[x >>> 6] |= (b & 0xFFL) << x;
+        }
+      }
+      c.skip(n);
+    }
+    chunks.add(key, Container.of(words, true));
+    return chunks.done();
+  }
+
+  // Apply the op chunk by chunk.
+  public static RoaringBits apply(RoaringBits a, RoaringBits b, Op op) {
+    Chunks chunks = new Chunks(a.size + b.size);
+    for (int i = 0, j = 0; i < a.size || j < b.size;) {
+      if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+        // Only in a - share it.
+        if (op.keepA) {
+          chunks.add(a.keys[i], a.containers[i]);
+        }
+        i += 1;
+      } else if (i >= a.size || b.keys[j] < a.keys[i]) {
+        // Only in b.
+        if (op.keepB) {
+          chunks.add(b.keys[j], b.containers[j]);
+        }
+        j += 1;
+      } else {
+        // In both.
+        chunks.add(a.keys[i], a.containers[i].apply(b.containers[j], op));
+        i += 1;
+        j += 1;
+      }
+    }
+    return chunks.done();
+  }
+
+  // The bits of a that are not in b - chunks only in a are shared.
+  public static RoaringBits andNot(RoaringBits a, RoaringBits b) {
+    Chunks chunks = new Chunks(a.size);
+    for (int i = 0, j = 0; i < a.size; i++) {
+      j = b.gallop(j, a.keys[i]);
+      chunks.add(a.keys[i], j < b.size && b.keys[j] == a.keys[i] ? a.containers[i].andNot(b.containers[j]) : a.containers[i]);
+    }
+    return chunks.done();
+  }
+
+  // The first chunk at or after from with at least that key - steps of 1, 2, 4 ... then a binary search.
+  private int gallop(int from, long key) {
+    int lo = from;
+    int hi = from;
+    for (int step = 1; hi < size && keys[hi] < key; step <<= 1) {
+      lo = hi + 1;
+      hi = (int) Math.min((long) from + step, size);
+    }
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (keys[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // Bit index as a long.
+  private static long bitIndex(BigInteger index) {
+    if (index.bitLength() >= 64) {
+      throw new ArithmeticException("Index too big for RoaringBits: " + index);
+    }
+    return index.longValue();
+  }
+
+  // The bits of one chunk as Bigs.
+  private HugeBits chunk(int i) {
+    HugeBits.Appender out = new HugeBits.Appender();
+    out.skipTo(BigInteger.valueOf(keys[i]).shiftLeft(SHIFT));
+    containers[i].writeTo(out);
+    return out.done();
+  }
+
+  // How many bits are set.
+  public long cardinality() {
+    long card = 0;
+    for (int i = 0; i < size; i++) {
+      card += containers[i].cardinality();
+    }
+    return card;
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator() {
+    return new RoaringBitsIterator(false);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> reverseIterator() {
+    return new RoaringBitsIterator(true);
+  }
+
+  @Override
+  public BigInteger length() {
+    if (size == 0) {
+      return BigInteger.ZERO;
+    }
+    return BigInteger.valueOf(keys[size - 1]).shiftLeft(SHIFT).add(BigInteger.valueOf(containers[size - 1].last() + 1));
+  }
+
+  // Collects chunks in ascending order.
+  private static class Chunks {
+    private long[] keys;
+    private Container[] containers;
+    private int size = 0;
+
+    Chunks(int capacity) {
+      keys = new long[Math.max(capacity, 1)];
+      containers = new Container[keys.length];
+    }
+
+    // Add one - ignores empty ones.
+    void add(long key, Container c) {
+      if (c != null) {
+        if (size == keys.length) {
+          keys = Arrays.copyOf(keys, size * 2);
+          containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size++] = c;
+      }
+    }
+
+    RoaringBits done() {
+      return new RoaringBits(keys, containers, size);
+    }
+
+  }
+
+  class RoaringBitsIterator extends Bits.BitsIterator {
+    // Which way.
+    private final boolean reverse;
+    // The next chunk to unpack.
+    private int chunk;
+    // The Bigs of the current chunk.
+    private Sparse.Iterator<Big, BigInteger> it = null;
+
+    private RoaringBitsIterator(boolean reverse) {
+      this.reverse = reverse;
+      chunk = reverse ? size - 1 : 0;
+    }
+
+    @Override
+    protected void getNext() {
+      while (it == null || !it.hasNext()) {
+        if (chunk < 0 || chunk >= size) {
+          next = null;
+          return;
+        }
+        HugeBits bits = chunk(chunk);
+        it = reverse ? bits.reverseIterator() : bits.iterator();
+        chunk += reverse ? -1 : 1;
+      }
+      next = it.next();
+    }
+
+    // Whole chunks below it are galloped over without being unpacked.
+    @Override
+    public void skipTo(BigInteger at) {
+      if (!reverse && (next == null || ((Big) next).index().add(((Big) next).length()).compareTo(at) <= 0)) {
+        next = null;
+        if (it != null) {
+          it.skipTo(at);
+        }
+        if (it == null || !it.hasNext()) {
+          it = null;
+          chunk = at.bitLength() >= 64 ? size : gallop(chunk, at.longValue() >>> SHIFT);
+        }
+      }
+      super.skipTo(at);
+    }
+
+  }
+
+}
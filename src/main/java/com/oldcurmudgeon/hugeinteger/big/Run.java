@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A run of the same byte over and over - usually 0xFF.
+ *
+ * Stored as where it starts, how many bytes and the byte so 2^(10^9)-1
+ * is three numbers rather than a gigabit BigInteger. Merges, lengths and
+ * iterators never need the value - it is only built if someone asks for
+ * it with value() or bytes().
+ *
+ * A Run may touch the Bigs either side of it - they are not joined up.
+ *
+ * @author OldCurmudgeon.
+ */
+public class Run extends Big {
+  // How many bytes.
+  private final BigInteger count;
+  // Of what.
+  private final byte fill;
+
+  public Run(BigInteger index, BigInteger count, byte fill) {
+    super(index, (Void) null);
+    if (index.mod(Bits.EIGHT).signum() != 0) {
+      throw new IllegalArgumentException("Run must start on a byte: " + index);
+    }
+    if (count.signum() <= 0 || fill == 0) {
+      throw new IllegalArgumentException("Run must not be empty: " + count + " of " + fill);
+    }
+    this.count = count;
+    this.fill = fill;
+  }
+
+  public BigInteger count() {
+    return count;
+  }
+
+  public byte fill() {
+    return fill;
+  }
+
+  @Override
+  public BigInteger length() {
+    // All but the top byte plus what the top byte needs.
+    return count.subtract(BigInteger.ONE).multiply(Bits.EIGHT).add(BigInteger.valueOf(32 - Integer.numberOfLeadingZeros(fill & 0xFF)));
+  }
+
+  @Override
+  public int lengthAsInt() {
+    // Up to 2^28 bytes fit.
+    return count.bitLength() < 29 ? length().intValue() : -1;
+  }
+
+  @Override
+  BigInteger end() {
+    return index().add(count.multiply(Bits.EIGHT));
+  }
+
+  // Every byte is the same so only the fill needs looking at.
+  @Override
+  boolean testBit(BigInteger bit) {
+    BigInteger offset = bit.subtract(index());
+    return offset.signum() >= 0 && bit.compareTo(end()) < 0 && (fill >> offset.mod(Bits.EIGHT).intValue() & 1) != 0;
+  }
+
+  @Override
+  BigInteger nextSetBit(BigInteger from) {
+    BigInteger offset = from.subtract(index());
+    if (offset.signum() <= 0) {
+      return index().add(BigInteger.valueOf(Integer.numberOfTrailingZeros(fill)));
+    }
+    if (from.compareTo(end()) >= 0) {
+      return null;
+    }
+    // In this byte?
+    int above = (fill & 0xFF) >>> offset.mod(Bits.EIGHT).intValue();
+    if (above != 0) {
+      return from.add(BigInteger.valueOf(Integer.numberOfTrailingZeros(above)));
+    }
+    // The next one then.
+    BigInteger next = offset.divide(Bits.EIGHT).add(BigInteger.ONE);
+    return next.compareTo(count) < 0 ? index().add(next.multiply(Bits.EIGHT)).add(BigInteger.valueOf(Integer.numberOfTrailingZeros(fill))) : null;
+  }
+
+  @Override
+  BigInteger previousSetBit(BigInteger at) {
+    BigInteger offset = at.subtract(index());
+    if (offset.signum() < 0) {
+      return null;
+    }
+    if (at.compareTo(end()) >= 0) {
+      return index().add(length()).subtract(BigInteger.ONE);
+    }
+    // In this byte?
+    BigInteger[] qr = offset.divideAndRemainder(Bits.EIGHT);
+    int below = (fill & 0xFF) & ((2 << qr[1].intValue()) - 1);
+    if (below != 0) {
+      return at.subtract(qr[1]).add(BigInteger.valueOf(31 - Integer.numberOfLeadingZeros(below)));
+    }
+    // The one before then.
+    return qr[0].signum() > 0 ? at.subtract(qr[1]).subtract(BigInteger.ONE).subtract(BigInteger.valueOf(Integer.numberOfLeadingZeros(fill & 0xFF) - 24)) : null;
+  }
+
+  @Override
+  BigInteger bitCount() {
+    return count.multiply(BigInteger.valueOf(Integer.bitCount(fill & 0xFF)));
+  }
+
+  @Override
+  BigInteger rank(BigInteger bit) {
+    BigInteger offset = bit.subtract(index());
+    if (offset.signum() <= 0) {
+      return BigInteger.ZERO;
+    }
+    if (bit.compareTo(end()) >= 0) {
+      return bitCount();
+    }
+    // Whole bytes and part of one.
+    BigInteger[] qr = offset.divideAndRemainder(Bits.EIGHT);
+    int part = Integer.bitCount(fill & 0xFF & ((1 << qr[1].intValue()) - 1));
+    return qr[0].multiply(BigInteger.valueOf(Integer.bitCount(fill & 0xFF))).add(BigInteger.valueOf(part));
+  }
+
+  @Override
+  BigInteger select(BigInteger k) {
+    BigInteger[] qr = k.divideAndRemainder(BigInteger.valueOf(Integer.bitCount(fill & 0xFF)));
+    return index().add(qr[0].multiply(Bits.EIGHT)).add(BigInteger.valueOf(select(fill, qr[1].intValue())));
+  }
+
+  // Built every time it is asked for - it could be huge.
+  @Override
+  public BigInteger value() {
+    return new BigInteger(1, bytes());
+  }
+
+  @Override
+  byte[] bytes() {
+    if (count.bitLength() > 31) {
+      throw new ArithmeticException("Run too long to build: " + count + " bytes.");
+    }
+    byte[] bytes = new byte[count.intValue()];
+    Arrays.fill(bytes, fill);
+    return bytes;
+  }
+
+  @Override
+  public String toString(int base) {
+    return Integer.toString(fill & 0xFF, base) + "*" + count + ":[" + index() + "]";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof Run) {
+      Run it = (Run) o;
+      return it.index().equals(index()) && it.count.equals(count) && it.fill == fill;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 5;
+    hash = 17 * hash + Objects.hashCode(index());
+    hash = 17 * hash + Objects.hashCode(count);
+    hash = 17 * hash + fill;
+    return hash;
+  }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A view of some Bits shifted left (or right if the shift is negative).
+ *
+ * Nothing is copied - each Big just gets its index moved as it goes past.
+ * If the shift is a whole number of bytes that is all there is to it. If
+ * not the Bigs are realigned to their new bytes a cluster at a time - those
+ * close enough to end up sharing or touching a byte - through a Realigner
+ * so what comes out is joined up and normalised as in HugeBits.
+ *
+ * A Run stays a Run - shifted by part of a byte only its two edge bytes
+ * change.
+ *
+ * Bits shifted off the bottom are lost - only the Big across zero is cut.
+ *
+ * @author OldCurmudgeon.
+ */
+class ShiftedBits extends Bits<Big> {
+  // Bigs at least this far apart cannot end up sharing or touching a byte.
+  private static final BigInteger APART = BigInteger.valueOf(16);
+  // What we are looking at.
+  private final Bits<Big> bits;
+  // How far to shift it - negative for right.
+  private final BigInteger shift;
+  // Is the shift a whole number of bytes?
+  private final boolean aligned;
+
+  private ShiftedBits(Bits<Big> bits, BigInteger shift) {
+    this.bits = bits;
+    this.shift = shift;
+    this.aligned = shift.mod(EIGHT).signum() == 0;
+  }
+
+  // A view shifted by n.
+  static Bits<Big> shift(Bits<Big> bits, BigInteger n) {
+    if (bits instanceof ShiftedBits) {
+      ShiftedBits shifted = (ShiftedBits) bits;
+      // Can add them up unless bits have already gone off the bottom.
+      if (shifted.shift.signum() >= 0 || n.signum() <= 0) {
+        return shift(shifted.bits, shifted.shift.add(n));
+      }
+    }
+    return n.signum() == 0 ? bits : new ShiftedBits(bits, n);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator() {
+    return new ShiftedBitsIterator(bits.iterator(), false);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> reverseIterator() {
+    return new ShiftedBitsIterator(bits.reverseIterator(), true);
+  }
+
+  @Override
+  public Sparse.Iterator<Big, BigInteger> iterator(BigInteger from, BigInteger to) {
+    // The cut one at zero is not where the original thinks it is.
+    boolean cut = shift.signum() < 0 && from.signum() == 0;
+    if (aligned && !cut && from.compareTo(shift) >= 0) {
+      // Ask the original for its range.
+      return new ShiftedBitsIterator(bits.iterator(from.subtract(shift), to.subtract(shift)), false);
+    }
+    return super.iterator(from, to);
+  }
+
+  @Override
+  BigInteger boundary(BigInteger at) {
+    if (!aligned) {
+      // Could be joined up with anything.
+      return null;
+    }
+    if (at.compareTo(shift) <= 0) {
+      // Nothing down there.
+      return at;
+    }
+    BigInteger original = bits.boundary(at.subtract(shift));
+    return original == null ? null : original.add(shift);
+  }
+
+  @Override
+  public BigInteger length() {
+    BigInteger length = bits.length();
+    // Nothing moved is still nothing.
+    return length.signum() == 0 ? length : length.add(shift).max(BigInteger.ZERO);
+  }
+
+  // Move one Big a whole number of bytes - null if it has gone off the bottom.
+  private Big shift(Big big) {
+    BigInteger index = big.index().add(shift);
+    if (big instanceof Run) {
+      // Moved without being built - cut at zero if need be.
+      Run run = (Run) big;
+      BigInteger count = index.signum() >= 0 ? run.count() : run.end().add(shift).divide(EIGHT);
+      return count.signum() > 0 ? new Run(index.max(BigInteger.ZERO), count, run.fill()) : null;
+    }
+    if (index.signum() >= 0) {
+      return new Big(index, big.value());
+    }
+    // Some of it is below zero - cut it off.
+    BigInteger below = index.negate();
+    if (below.compareTo(big.length()) >= 0) {
+      return null;
+    }
+    return new Big(big.value().shiftRight(below.intValue()));
+  }
+
+  // Too far apart to end up sharing or touching a byte - in either order.
+  private static boolean apart(Big a, Big b) {
+    Big low = a.index().compareTo(b.index()) < 0 ? a : b;
+    Big high = low == a ? b : a;
+    return high.index().subtract(low.end()).compareTo(APART) >= 0;
+  }
+
+  /*
+   * Writes Bigs into an Appender each moved by any number of bits.
+   *
+   * A Big is moved by whole bytes and its bytes by what is left over. A Run
+   * keeps its fill - turned round - in the middle and only its edge bytes
+   * change. The top bytes of each are held back until the next arrives as
+   * it may start in the same byte. Bytes that go below zero are lost.
+   *
+   * They must come in order and, once moved, their bits must not overlap.
+   */
+  static class Realigner {
+    private final HugeBits.Appender out = new HugeBits.Appender();
+    // The held back bytes - how many of which and the bit index of the first.
+    private byte held = 0;
+    private BigInteger count = BigInteger.ZERO;
+    private BigInteger at = null;
+
+    // Write big moved up by shift bits - down if negative.
+    void write(Big big, BigInteger shift) {
+      int r = shift.mod(EIGHT).intValue();
+      // Where its bottom byte goes.
+      BigInteger to = big.index().add(shift).subtract(BigInteger.valueOf(r));
+      if (big instanceof Run) {
+        Run run = (Run) big;
+        int f = run.fill() & 0xFF;
+        if (r == 0) {
+          put(to, run.fill(), run.count());
+        } else {
+          put(to, (byte) (f << r), BigInteger.ONE);
+          put(to.add(EIGHT), (byte) (f << r | f >>> (8 - r)), run.count().subtract(BigInteger.ONE));
+          put(run.end().add(shift).subtract(BigInteger.valueOf(r)), (byte) (f >>> (8 - r)), BigInteger.ONE);
+        }
+      } else {
+        byte[] bytes = big.bytes();
+        if (r != 0) {
+          byte[] moved = new byte[bytes.length + 1];
+          int carry = 0;
+          for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            moved[i] = (byte) (b << r | carry);
+            carry = b >>> (8 - r);
+          }
+          moved[bytes.length] = (byte) carry;
+          bytes = moved;
+        }
+        put(to, bytes);
+      }
+    }
+
+    // Finished.
+    HugeBits done() {
+      release();
+      return out.done();
+    }
+
+    // n of the same byte from bit index to.
+    private void put(BigInteger to, byte b, BigInteger n) {
+      if (b == 0 || n.signum() <= 0) {
+        return;
+      }
+      if (to.signum() < 0) {
+        // Lose those below zero.
+        n = n.subtract(to.negate().divide(EIGHT));
+        to = BigInteger.ZERO;
+        if (n.signum() <= 0) {
+          return;
+        }
+      }
+      byte first = meet(to, b);
+      if (first != b) {
+        // The first one is shared - the rest are held.
+        out.skipTo(to);
+        out.write(first);
+        to = to.add(EIGHT);
+        n = n.subtract(BigInteger.ONE);
+      }
+      hold(b, n, to);
+    }
+
+    // Bytes - least significant first - from bit index to.
+    private void put(BigInteger to, byte[] bytes) {
+      int from = 0;
+      if (to.signum() < 0) {
+        // Lose those below zero.
+        BigInteger below = to.negate().divide(EIGHT);
+        if (below.compareTo(BigInteger.valueOf(bytes.length)) >= 0) {
+          return;
+        }
+        from = below.intValue();
+        to = BigInteger.ZERO;
+      }
+      bytes[from] = meet(to, bytes[from]);
+      out.skipTo(to);
+      int i = from;
+      for (; i + 8 < bytes.length; i += 8) {
+        out.write(Big.word(bytes, i));
+      }
+      for (; i < bytes.length - 1; i++) {
+        out.write(bytes[i]);
+      }
+      // The top one is held.
+      hold(bytes[i], BigInteger.ONE, to.add(BigInteger.valueOf(i - from).multiply(EIGHT)));
+    }
+
+    // Let the held ones go - joining the last of them to b if it is at to.
+    private byte meet(BigInteger to, byte b) {
+      if (count.signum() > 0 && at.add(count.subtract(BigInteger.ONE).multiply(EIGHT)).equals(to)) {
+        count = count.subtract(BigInteger.ONE);
+        byte last = held;
+        release();
+        return (byte) (b | last);
+      }
+      release();
+      return b;
+    }
+
+    private void hold(byte b, BigInteger n, BigInteger to) {
+      held = b;
+      count = n;
+      at = to;
+    }
+
+    private void release() {
+      if (count.signum() > 0) {
+        out.skipTo(at);
+        out.fill(held, count);
+        count = BigInteger.ZERO;
+      }
+    }
+
+  }
+
+  class ShiftedBitsIterator extends Bits.BitsIterator {
+    private final Sparse.Iterator<Big, BigInteger> it;
+    private final boolean reverse;
+    // Realigned ones waiting to go - in the order they go out.
+    private final ArrayDeque<Big> ready = new ArrayDeque<>();
+    // The first of the next cluster - already taken from the original.
+    private Big ahead = null;
+
+    private ShiftedBitsIterator(Sparse.Iterator<Big, BigInteger> it, boolean reverse) {
+      this.it = it;
+      this.reverse = reverse;
+    }
+
+    @Override
+    protected void getNext() {
+      if (aligned) {
+        Big big = null;
+        while (big == null && it.hasNext()) {
+          big = shift(it.next());
+        }
+        next = big;
+      } else {
+        while (ready.isEmpty() && (ahead != null || it.hasNext())) {
+          realign();
+        }
+        next = ready.poll();
+      }
+    }
+
+    // Realign the next cluster.
+    private void realign() {
+      List<Big> cluster = new ArrayList<>();
+      for (Big big = ahead != null ? ahead : it.next(); big != null; big = it.hasNext() ? it.next() : null) {
+        if (!cluster.isEmpty() && apart(cluster.get(cluster.size() - 1), big)) {
+          // Starts the next one.
+          ahead = big;
+          break;
+        }
+        ahead = null;
+        cluster.add(big);
+      }
+      if (reverse) {
+        Collections.reverse(cluster);
+      }
+      Realigner out = new Realigner();
+      for (Big big : cluster) {
+        out.write(big, shift);
+      }
+      HugeBits done = out.done();
+      for (Sparse.Iterator<Big, BigInteger> i = reverse ? done.reverseIterator() : done.iterator(); i.hasNext();) {
+        ready.add(i.next());
+      }
+    }
+
+    // Nothing is joined up when aligned so the original can do the skipping.
+    @Override
+    public void skipTo(BigInteger at) {
+      if (aligned && !reverse && next == null) {
+        it.skipTo(at.subtract(shift));
+      }
+      super.skipTo(at);
+    }
+
+  }
+
+}
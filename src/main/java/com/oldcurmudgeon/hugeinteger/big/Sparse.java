@@ -34,7 +34,11 @@ package com.oldcurmudgeon.hugeinteger.big;
  * @author OldCurmudgeon.
  */
 public interface Sparse<T, I extends Number> {
-  
+  /**
+   * What indexAsLong gives when the index will not fit in a long.
+   */
+  public static final long NO_INDEX = Long.MIN_VALUE;
+
   /**
    * Gives the bit index.
    * 
@@ -85,6 +89,28 @@ public interface Sparse<T, I extends Number> {
      */
     public I length();
 
+    /**
+     * The index as a long - NO_INDEX if it will not fit
+     * or there is nothing left.
+     *
+     * Lets a caller stay with primitives while the indexes are small
+     * and only fall back to index() for huge ones.
+     */
+    public long indexAsLong();
+
+    /**
+     * The length as an int - -1 if it will not fit
+     * or there is nothing left.
+     */
+    public int lengthAsInt();
+
+    /**
+     * Skip everything that lies wholly below index.
+     * What comes next may still start below it.
+     * Never goes back.
+     */
+    public void skipTo(I index);
+
   }
 
   /**
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+/**
+ * The loops over arrays of 64 bit words - an Op or and-not across two
+ * of them and counting the bits.
+ *
+ * This one is plain Java. KERNEL is a VectorKernel instead if that was
+ * built (see src/main/java16) and the jdk.incubator.vector module is
+ * there at run time (--add-modules jdk.incubator.vector) - otherwise it
+ * is this one.
+ *
+ * @author OldCurmudgeon.
+ */
+class WordKernel {
+  // The one to use.
+  static final WordKernel KERNEL = load();
+
+  WordKernel() {
+  }
+
+  private static WordKernel load() {
+    try {
+      return (WordKernel) Class.forName(WordKernel.class.getPackage().getName() + ".VectorKernel")
+              .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError ex) {
+      // Not built or no module - do without.
+      return new WordKernel();
+    }
+  }
+
+  /*
+   * The op on the first n words of a and b into the first n of into.
+   *
+   * into may be a or b to do it in place.
+   */
+  void op(Bits.Op op, long[] a, long[] b, long[] into, int n) {
+    switch (op) {
+      case xor:
+        for (int i = 0; i < n; i++) {
+          into[i] = a[i] ^ b[i];
+        }
+        break;
+      case and:
+        for (int i = 0; i < n; i++) {
+          into[i] = a[i] & b[i];
+        }
+        break;
+      case or:
+        for (int i = 0; i < n; i++) {
+          into[i] = a[i] | b[i];
+        }
+        break;
+    }
+  }
+
+  // a and not b - as op does it.
+  void andNot(long[] a, long[] b, long[] into, int n) {
+    for (int i = 0; i < n; i++) {
+      into[i] = a[i] & ~b[i];
+    }
+  }
+
+  // How many bits are set in the first n words.
+  int bitCount(long[] words, int n) {
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      count += Long.bitCount(words[i]);
+    }
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 OldCurmudgeon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * WordKernel using the Vector API - as many words at a time as the
+ * hardware takes.
+ *
+ * Only built by the vector profile (Java 16 or later) and only used if
+ * the jdk.incubator.vector module is there at run time. WordKernel finds
+ * it by name - nothing else refers to it.
+ *
+ * The ends that do not fill a whole vector are done a word at a time.
+ *
+ * @author OldCurmudgeon.
+ */
+class VectorKernel extends WordKernel {
+  private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+  @Override
+  void op(Bits.Op op, long[] a, long[] b, long[] into, int n) {
+    VectorOperators.Binary lanewise = op == Bits.Op.xor ? VectorOperators.XOR
+            : op == Bits.Op.and ? VectorOperators.AND
+            : VectorOperators.OR;
+    int top = SPECIES.loopBound(n);
+    for (int i = 0; i < top; i += SPECIES.length()) {
+      LongVector.fromArray(SPECIES, a, i).lanewise(lanewise, LongVector.fromArray(SPECIES, b, i)).intoArray(into, i);
+    }
+    for (int i = top; i < n; i++) {
+      into[i] = op.op(a[i], b[i]);
+    }
+  }
+
+  @Override
+  void andNot(long[] a, long[] b, long[] into, int n) {
+    int top = SPECIES.loopBound(n);
+    for (int i = 0; i < top; i += SPECIES.length()) {
+      LongVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.AND_NOT, LongVector.fromArray(SPECIES, b, i)).intoArray(into, i);
+    }
+    for (int i = top; i < n; i++) {
+      into[i] = a[i] & ~b[i];
+    }
+  }
+
+  /*
+   * Counts in each lane the way Long.bitCount does it - pairs, nibbles,
+   * bytes, then a multiply adds the bytes up into the top one.
+   *
+   * There is no lanewise BIT_COUNT before Java 19.
+   */
+  @Override
+  int bitCount(long[] words, int n) {
+    int top = SPECIES.loopBound(n);
+    LongVector counts = LongVector.zero(SPECIES);
+    for (int i = 0; i < top; i += SPECIES.length()) {
+      LongVector x = LongVector.fromArray(SPECIES, words, i);
+      x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+      x = x.and(0x3333333333333333L).add(x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+      x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+      counts = counts.add(x.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56));
+    }
+    int count = (int) counts.reduceLanes(VectorOperators.ADD);
+    for (int i = top; i < n; i++) {
+      count += Long.bitCount(words[i]);
+    }
+    return count;
+  }
+
+}
@@ -83,4 +83,52 @@ public class BigTest {
     }
   }
 
+  /**
+   * Test of equals method against a BigInteger, of class Big.
+   */
+  @Test
+  public void testEqualsBigInteger() {
+    for ( int i = 0; i < c.length; i++ ) {
+      assertTrue("c["+i+"].equals(BigInteger)",c[i].equals(bigA.shiftLeft(i)));
+      assertFalse("c["+i+"].equals(BigInteger+1)",c[i].equals(bigA.shiftLeft(i).add(BigInteger.ONE)));
+    }
+    // Too far up for any BigInteger - used to overflow.
+    assertFalse(new Big(BigInteger.ONE.shiftLeft(40), BigInteger.ONE).equals(BigInteger.ONE));
+  }
+
+  /**
+   * Test of interning the values.
+   */
+  @Test
+  public void testIntern() {
+    BigInterner.enable(1000);
+    try {
+      // Same value at different indexes - and some bits to shift down.
+      Big x = new Big(BigInteger.valueOf(80), bigA);
+      Big y = new Big(BigInteger.valueOf(4000), bigA);
+      Big z = new Big(BigInteger.valueOf(8), bigA.shiftLeft(72));
+      assertSame(x.value(), y.value());
+      assertSame(x.value(), z.value());
+      assertEquals(new Big(BigInteger.valueOf(80), bigA), x);
+      assertEquals(x.hashCode(), new Big(x).hashCode());
+      assertFalse(x.equals(y));
+      // Too long to bother with.
+      BigInteger huge = BigInteger.ONE.shiftLeft(BigInterner.MAX_BITS + 8).subtract(BigInteger.ONE);
+      assertNotSame(new Big(huge).value(), new Big(huge.shiftLeft(8)).value());
+    } finally {
+      BigInterner.disable();
+    }
+    assertNotSame(new Big(bigA).value(), new Big(bigA.shiftLeft(8)).value());
+    // Still equal without.
+    assertEquals(new Big(bigA), new Big(bigA));
+  }
+
+  /**
+   * Test of an interner too big to round up.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInternTooBig() {
+    BigInterner.enable(BigInterner.MAX_SIZE + 1);
+  }
+
 }
\ No newline at end of file
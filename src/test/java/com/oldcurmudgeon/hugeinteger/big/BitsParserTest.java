@@ -0,0 +1,80 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class BitsParserTest {
+
+  /**
+   * Test of parse against BigInteger in all sorts of bases.
+   */
+  @Test
+  public void testParse() {
+    Random r = new Random(13);
+    int[] bases = {2, 3, 8, 10, 16, 32, 36};
+    for (int t = 0; t < 50; t++) {
+      HugeBits h = BitsTest.random(r, r.nextInt(t < 45 ? 20 : 300), 64);
+      BigInteger expected = Bits.toBigInteger(h);
+      for (int base : bases) {
+        HugeBits parsed = BitsParser.parse(expected.toString(base), base);
+        assertEquals("Base " + base, expected, Bits.toBigInteger(parsed));
+        BitsTest.assertNormal(parsed);
+      }
+    }
+    // Leading zeros and whitespace.
+    assertEquals(BigInteger.valueOf(0xABC), Bits.toBigInteger(BitsParser.parse(" 000a\nbc\n", 16)));
+  }
+
+  /**
+   * Test of parse with several chunks in a pool.
+   */
+  @Test
+  public void testParseChunks() throws IOException {
+    Random r = new Random(14);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (int base : new int[]{2, 8, 16}) {
+      // A few chunks and a bit over - with a long run of zeros across a chunk boundary.
+      StringBuilder s = new StringBuilder("1");
+      for (int i = 0; i < 2 * BitsParser.CHUNK + 1000; i++) {
+        s.append(i > BitsParser.CHUNK - 5000 && i < BitsParser.CHUNK + 5000 ? '0' : Character.forDigit(r.nextInt(base), base));
+      }
+      HugeBits parsed = BitsParser.parse(new StringReader(s.toString()), base, pool);
+      // BigInteger would take far too long.
+      assertEquals("Base " + base, s.toString(), parsed.toString(base));
+      BitsTest.assertNormal(parsed);
+    }
+    String decimal = new BigInteger(100000, r).toString();
+    assertEquals(new BigInteger(decimal), Bits.toBigInteger(BitsParser.parse(new StringReader(decimal), 10, pool)));
+    // Several chunks of base 3 - mostly zeros so BigInteger can check it.
+    char[] digits = new char[2 * BitsParser.CHUNK + 1000];
+    java.util.Arrays.fill(digits, '0');
+    BigInteger expected = BigInteger.ZERO;
+    for (int at : new int[]{0, BitsParser.CHUNK + r.nextInt(1000), digits.length - 1}) {
+      digits[at] = '2';
+      expected = expected.add(BigInteger.valueOf(3).pow(digits.length - 1 - at).shiftLeft(1));
+    }
+    assertEquals(expected, Bits.toBigInteger(BitsParser.parse(new StringReader(new String(digits)), 3, pool)));
+  }
+
+  /**
+   * Test of parse with a bad digit.
+   */
+  @Test(expected = NumberFormatException.class)
+  public void testBadDigit() {
+    BitsParser.parse("12g4", 16);
+  }
+
+}
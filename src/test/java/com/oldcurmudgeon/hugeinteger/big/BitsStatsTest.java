@@ -0,0 +1,86 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class BitsStatsTest {
+
+  /**
+   * Test of counting applies, adds and allocations.
+   */
+  @Test
+  public void testStats() throws Exception {
+    Random r = new Random(21);
+    HugeBits a = BitsTest.random(r, 100, 64);
+    HugeBits b = BitsTest.random(r, 100, 64);
+    BitsStats stats = BitsStats.register();
+    try {
+      HugeBits x = (HugeBits) Bits.apply(a, b, Bits.Op.xor);
+      assertEquals(1, stats.getApplies());
+      assertEquals(a.size() + b.size(), stats.getSegmentsVisited());
+      assertEquals(x.size(), stats.getSegmentsProduced());
+      assertEquals(1, sum(stats.getLatencyHistograms().get("xor")));
+      assertTrue(stats.getBytesAllocated() > 0);
+      // In parallel too.
+      HugeBits y = (HugeBits) Bits.apply(a, b, Bits.Op.and, new ForkJoinPool(4));
+      assertEquals(2, stats.getApplies());
+      // And skips some.
+      assertTrue(stats.getSegmentsVisited() > a.size() + b.size());
+      assertTrue(stats.getSegmentsVisited() <= 2 * (a.size() + b.size()));
+      assertEquals(x.size() + y.size(), stats.getSegmentsProduced());
+      assertEquals(1, sum(stats.getLatencyHistograms().get("and")));
+      // Joining two with one that bridges them.
+      HugeBits h = new HugeBits(new Big(0, 0xFF), new Big(16, 0xFF));
+      h.add(new Big(8, 1));
+      assertEquals(1, stats.getNormalises());
+      assertEquals(2, stats.getNormaliseJoined());
+      assertEquals(1, stats.getNormalisePieces());
+      // And over JMX.
+      ObjectName name = new ObjectName(BitsStats.NAME);
+      assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Applies"));
+      stats.reset();
+      assertEquals(0, stats.getApplies());
+      assertTrue(stats.getLatencyHistograms().isEmpty());
+    } finally {
+      stats.unregister();
+    }
+    // Nothing once it is gone.
+    Bits.apply(a, b, Bits.Op.or);
+    assertEquals(0, stats.getApplies());
+    assertFalse(BitsMetrics.on());
+  }
+
+  /**
+   * Test of the latency buckets.
+   */
+  @Test
+  public void testBucket() {
+    assertEquals(0, BitsStats.bucket(999));
+    assertEquals(1, BitsStats.bucket(1000));
+    assertEquals(2, BitsStats.bucket(2000));
+    assertEquals(2, BitsStats.bucket(3999));
+    assertEquals(BitsStats.BUCKETS - 1, BitsStats.bucket(Long.MAX_VALUE));
+  }
+
+  private static long sum(long[] counts) {
+    long sum = 0;
+    for (long c : counts) {
+      sum += c;
+    }
+    return sum;
+  }
+
+}
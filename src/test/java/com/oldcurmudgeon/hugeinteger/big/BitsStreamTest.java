@@ -0,0 +1,98 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class BitsStreamTest {
+
+  static byte[] write(Bits<Big> bits, boolean checksums) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BitsStream.writeTo(bits, out, checksums);
+    return out.toByteArray();
+  }
+
+  /**
+   * Test of writeTo and readFrom - enough to need several blocks.
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    Random r = new Random(9);
+    for (int t = 0; t < 20; t++) {
+      HugeBits h = BitsTest.random(r, r.nextInt(10000), 64);
+      boolean checksums = r.nextBoolean();
+      HugeBits back = BitsStream.readFrom(new ByteArrayInputStream(write(h, checksums)));
+      assertEquals(BitsTest.value(h), BitsTest.value(back));
+    }
+    // Something else.
+    BigBits b = new BigBits(new BigInteger("123456789012345678901234567890"));
+    assertEquals(BitsTest.value(b), BitsTest.value(BitsStream.readFrom(new ByteArrayInputStream(write(b, true)))));
+  }
+
+  /**
+   * Test of indexes too big for a long.
+   */
+  @Test
+  public void testHugeIndex() throws IOException {
+    BigInteger far = BigInteger.ONE.shiftLeft(100);
+    HugeBits h = new HugeBits(new Big(0, 1), new Big(far, BigInteger.valueOf(0x1234)), new Big(far.shiftLeft(1), BigInteger.ONE));
+    HugeBits back = BitsStream.readFrom(new ByteArrayInputStream(write(h, false)));
+    Sparse.Iterator<Big, BigInteger> i = back.iterator();
+    for (Sparse.Iterator<Big, BigInteger> j = h.iterator(); j.hasNext();) {
+      assertEquals(j.next(), i.next());
+    }
+    assertFalse(i.hasNext());
+  }
+
+  /**
+   * Test of reading a range.
+   */
+  @Test
+  public void testRange() throws IOException {
+    Random r = new Random(10);
+    HugeBits h = BitsTest.random(r, 20000, 64);
+    byte[] bytes = write(h, true);
+    for (int t = 0; t < 20; t++) {
+      BigInteger from = BigInteger.valueOf(r.nextInt(h.length().intValue()));
+      BigInteger to = from.add(BigInteger.valueOf(r.nextInt(100000)));
+      Sparse.Iterator<Big, BigInteger> i = h.iterator(h.boundary(from), h.boundary(to));
+      BitsStream.Reader reader = BitsStream.reader(new ByteArrayInputStream(bytes), h.boundary(from), h.boundary(to));
+      for (Big big = reader.next(); big != null; big = reader.next()) {
+        assertEquals(i.next(), big);
+      }
+      assertFalse(i.hasNext());
+    }
+  }
+
+  /**
+   * Test of a damaged stream with checksums.
+   */
+  @Test(expected = IOException.class)
+  public void testChecksum() throws IOException {
+    HugeBits h = BitsTest.random(new Random(11), 100, 64);
+    byte[] bytes = write(h, true);
+    bytes[bytes.length / 2] ^= 0x10;
+    BitsStream.readFrom(new ByteArrayInputStream(bytes));
+  }
+
+  /**
+   * Test of something that is not a stream.
+   */
+  @Test(expected = IOException.class)
+  public void testNotStream() throws IOException {
+    BitsStream.readFrom(new ByteArrayInputStream("0123456789".getBytes()));
+  }
+
+}
@@ -0,0 +1,611 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class BitsTest {
+  // The Bits as one BigInteger - only for testing small ones.
+  static BigInteger value(Bits<Big> bits) {
+    BigInteger v = BigInteger.ZERO;
+    for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+      Big next = i.next();
+      v = v.add(next.value().shiftLeft(next.index().intValue()));
+    }
+    return v;
+  }
+
+  // Check the Bigs are in order, do not overlap and have no zero bytes inside.
+  static void assertNormal(Bits<Big> bits) {
+    BigInteger end = null;
+    Big last = null;
+    for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+      Big next = i.next();
+      assertTrue("Zero segment", next.length().signum() > 0);
+      if (end != null) {
+        // A Run may touch.
+        assertTrue("Overlap or touching at " + next.index(), next.index().compareTo(end) > 0
+                || next.index().equals(end) && (next instanceof Run || last instanceof Run));
+      }
+      last = next;
+      if (!(next instanceof Run)) {
+        for (byte b : next.bytes()) {
+          if (b == 0) {
+            fail("Zero byte in " + next);
+          }
+        }
+      }
+      end = next.end();
+    }
+  }
+
+  // Check they hold exactly the same Bigs.
+  static void assertBigs(Bits<Big> expected, Bits<Big> got) {
+    Sparse.Iterator<Big, BigInteger> e = expected.iterator();
+    Sparse.Iterator<Big, BigInteger> g = got.iterator();
+    while (e.hasNext() && g.hasNext()) {
+      assertEquals(e.next(), g.next());
+    }
+    assertFalse("Too many", g.hasNext());
+    assertFalse("Too few", e.hasNext());
+  }
+
+  // A random sparse number with n Bigs separated by gaps of up to gap bits.
+  static HugeBits random(Random r, int n, int gap) {
+    HugeBits.Appender bits = new HugeBits.Appender();
+    BigInteger index = BigInteger.ZERO;
+    for (int i = 0; i < n; i++) {
+      index = index.add(BigInteger.valueOf(8 * (1 + r.nextInt(gap / 8))));
+      bits.skipTo(index);
+      int length = 1 + r.nextInt(6);
+      for (int j = 0; j < length; j++) {
+        bits.write((byte) r.nextInt());
+      }
+      index = bits.position();
+    }
+    return bits.done();
+  }
+
+  /**
+   * Test of apply method with partly overlapping Bigs.
+   */
+  @Test
+  public void testApplyPartialOverlap() {
+    // 16 bits at 0 against 16 bits at 8.
+    HugeBits a = new HugeBits(new Big(0, 0xF1F2));
+    HugeBits b = new HugeBits(new Big(8, 0x1F2F));
+    BigInteger va = value(a);
+    BigInteger vb = value(b);
+    for (Bits.Op op : Bits.Op.values()) {
+      Bits<Big> r = Bits.apply(a, b, op);
+      assertEquals("a " + op + " b", op.op(va, vb), value(r));
+      assertNormal(r);
+    }
+  }
+
+  /**
+   * Test of apply method against BigInteger.
+   */
+  @Test
+  public void testApplyRandom() {
+    Random r = new Random(42);
+    for (int t = 0; t < 200; t++) {
+      HugeBits a = random(r, 1 + r.nextInt(20), 64);
+      HugeBits b = random(r, 1 + r.nextInt(20), 64);
+      BigInteger va = value(a);
+      BigInteger vb = value(b);
+      for (Bits.Op op : Bits.Op.values()) {
+        Bits<Big> result = Bits.apply(a, b, op);
+        assertEquals(a + " " + op + " " + b, op.op(va, vb), value(result));
+        assertNormal(result);
+      }
+    }
+  }
+
+  /**
+   * Test of apply method with a BigBits holding zero bytes.
+   */
+  @Test
+  public void testApplyBigBits() {
+    BigInteger x = new BigInteger("1000000000000000000ff00000000000000ab", 16);
+    BigInteger y = new BigInteger("ff00ff00ff00ff00ff00", 16);
+    Bits<Big> r = Bits.apply(new BigBits(x), new BigBits(y), Bits.Op.xor);
+    assertEquals(x.xor(y), value(r));
+    assertNormal(r);
+  }
+
+  /**
+   * Test of apply method in parallel against the single threaded one.
+   */
+  @Test
+  public void testApplyParallel() {
+    Random r = new Random(5);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (int t = 0; t < 20; t++) {
+      HugeBits a = random(r, 1 + r.nextInt(2000), 64);
+      HugeBits b = random(r, 1 + r.nextInt(2000), 64);
+      for (Bits.Op op : Bits.Op.values()) {
+        Bits<Big> expected = Bits.apply(a, b, op);
+        Bits<Big> got = Bits.apply(a, b, op, pool);
+        assertEquals(op.toString(), value(expected), value(got));
+        assertNormal(got);
+      }
+    }
+    // Mixed with a BigBits.
+    BigBits c = new BigBits(new BigInteger(5000, r));
+    HugeBits d = random(r, 100, 64);
+    assertEquals(value(Bits.xor(c, d)), value(Bits.xor(c, d, pool)));
+    pool.shutdown();
+  }
+
+  /**
+   * Test of add and subtract methods against BigInteger.
+   */
+  @Test
+  public void testAddSubtract() {
+    Random r = new Random(6);
+    for (int t = 0; t < 200; t++) {
+      HugeBits a = random(r, 1 + r.nextInt(20), 64);
+      HugeBits b = random(r, 1 + r.nextInt(20), 64);
+      Bits<Big> sum = Bits.add(a, b);
+      assertEquals(value(a).add(value(b)), value(sum));
+      assertNormal(sum);
+      Bits<Big> difference = Bits.subtract(sum, b);
+      assertEquals(value(a), value(difference));
+      assertNormal(difference);
+    }
+  }
+
+  /**
+   * Test of add and multiply in parallel against BigInteger.
+   */
+  @Test
+  public void testArithmeticParallel() {
+    Random r = new Random(7);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (int t = 0; t < 20; t++) {
+      HugeBits a = random(r, 1 + r.nextInt(2000), 64);
+      HugeBits b = random(r, 1 + r.nextInt(2000), 64);
+      Bits<Big> sum = Bits.add(a, b, pool);
+      assertEquals(value(a).add(value(b)), value(sum));
+      assertNormal(sum);
+      HugeBits c = random(r, 1 + r.nextInt(50), 64);
+      Bits<Big> product = Bits.multiply(a, c, pool);
+      assertEquals(value(a).multiply(value(c)), value(product));
+      assertNormal(product);
+    }
+    // Every carry lands where the next Big starts - wherever the cuts are.
+    HugeBits.Builder ones = new HugeBits.Builder();
+    HugeBits.Builder units = new HugeBits.Builder();
+    for (int i = 0; i < 5000; i++) {
+      ones.add(new Big(24 * i, 0xFFFF));
+      units.add(new Big(24 * i, 1));
+    }
+    HugeBits a = ones.build();
+    HugeBits b = units.build();
+    Bits<Big> carried = Bits.add(a, b, pool);
+    assertEquals(value(a).add(value(b)), value(carried));
+    assertNormal(carried);
+    pool.shutdown();
+  }
+
+  /**
+   * Test of carry and borrow across gaps.
+   */
+  @Test
+  public void testCarryBorrow() {
+    // 0xFF at 0 + 1 at 0 with 1 at 16 - carry lands in the gap.
+    HugeBits a = new HugeBits(new Big(0, 0xFF), new Big(16, 1));
+    Bits<Big> sum = Bits.add(a, new HugeBits(new Big(0, 1)));
+    assertEquals(BigInteger.valueOf(0x10100), value(sum));
+    assertNormal(sum);
+    // 2^400 - 1 borrows right across the gap.
+    Bits<Big> ones = Bits.subtract(new HugeBits(new Big(400, 1)), new HugeBits(new Big(0, 1)));
+    assertEquals(BigInteger.ONE.shiftLeft(400).subtract(BigInteger.ONE), value(ones));
+    assertNormal(ones);
+    // The gap is a Run.
+    assertBigs(new HugeBits(new Run(BigInteger.ZERO, BigInteger.valueOf(50), (byte) 0xFF)), ones);
+  }
+
+  /**
+   * Test of subtract method going negative.
+   */
+  @Test(expected = ArithmeticException.class)
+  public void testSubtractNegative() {
+    Bits.subtract(new HugeBits(new Big(0, 1)), new HugeBits(new Big(8, 1)));
+  }
+
+  /**
+   * Test of multiply method against BigInteger.
+   */
+  @Test
+  public void testMultiply() {
+    Random r = new Random(8);
+    for (int t = 0; t < 100; t++) {
+      // Sparse ones stay sparse - dense ones go dense.
+      int gap = t % 2 == 0 ? 2000 : 16;
+      HugeBits a = random(r, 1 + r.nextInt(20), gap);
+      HugeBits b = random(r, 1 + r.nextInt(20), gap);
+      Bits<Big> product = Bits.multiply(a, b);
+      assertEquals(value(a).multiply(value(b)), value(product));
+      assertNormal(product);
+    }
+  }
+
+  /**
+   * Test of multiply method with widely spaced terms.
+   */
+  @Test
+  public void testMultiplySparse() {
+    // (2^100000 + 1)(2^200000 + 3) = 2^300000 + 3.2^100000 + 2^200000 + 3.
+    HugeBits a = new HugeBits(new Big(0, 1), new Big(100000, 1));
+    HugeBits b = new HugeBits(new Big(0, 3), new Big(200000, 1));
+    Bits<Big> product = Bits.multiply(a, b);
+    HugeBits expected = new HugeBits(new Big(0, 3), new Big(100000, 3), new Big(200000, 1), new Big(300000, 1));
+    assertBigs(expected, product);
+  }
+
+  /**
+   * Test of toBigInteger method.
+   */
+  @Test
+  public void testToBigInteger() {
+    HugeBits a = random(new Random(9), 30, 100);
+    assertEquals(value(a), Bits.toBigInteger(a));
+  }
+
+  /**
+   * Test of shiftLeft and shiftRight against BigInteger.
+   */
+  @Test
+  public void testShift() {
+    Random r = new Random(10);
+    for (int t = 0; t < 200; t++) {
+      HugeBits a = random(r, 1 + r.nextInt(20), 64);
+      if (t % 2 == 0) {
+        // Some Runs too.
+        a = (HugeBits) Bits.apply(a, Bits.ones(BigInteger.valueOf(r.nextInt(500)), BigInteger.valueOf(500 + r.nextInt(2000))), Bits.Op.xor);
+      }
+      int n = r.nextInt(300);
+      Bits<Big> left = Bits.shiftLeft(a, BigInteger.valueOf(n));
+      assertEquals(value(a).shiftLeft(n), value(left));
+      assertNormal(left);
+      assertEquals(value(a).shiftLeft(n).bitLength(), left.length().intValue());
+      Bits<Big> right = Bits.shiftRight(a, BigInteger.valueOf(n));
+      assertEquals(value(a).shiftRight(n), value(right));
+      assertNormal(right);
+      // Reverse gives the same ones.
+      int count = 0;
+      for (Sparse.Iterator<Big, BigInteger> i = right.reverseIterator(); i.hasNext(); i.next()) {
+        count += 1;
+      }
+      for (Sparse.Iterator<Big, BigInteger> i = right.iterator(); i.hasNext(); i.next()) {
+        count -= 1;
+      }
+      assertEquals(0, count);
+      // Shifting back.
+      assertEquals(value(a).shiftRight(n).shiftLeft(n), value(Bits.shiftLeft(right, BigInteger.valueOf(n))));
+      assertEquals(value(a), value(Bits.shiftRight(left, BigInteger.valueOf(n))));
+      // Works in a merge.
+      assertEquals(value(a).xor(value(a).shiftLeft(n)), value(Bits.xor(a, left)));
+    }
+  }
+
+  /**
+   * Test of shifting nothing.
+   */
+  @Test
+  public void testShiftEmpty() {
+    for (int n : new int[]{3, 8, 72}) {
+      for (Bits<Big> shifted : Arrays.asList(Bits.shiftLeft(new HugeBits(), BigInteger.valueOf(n)), Bits.shiftRight(new HugeBits(), BigInteger.valueOf(n)))) {
+        assertEquals(BigInteger.ZERO, shifted.length());
+        assertFalse(shifted.iterator().hasNext());
+        assertFalse(shifted.reverseIterator().hasNext());
+        assertEquals(BigInteger.ZERO, value(shifted));
+      }
+    }
+  }
+
+  /**
+   * Test of shifting a very long way.
+   */
+  @Test
+  public void testShiftHuge() {
+    HugeBits a = new HugeBits(new Big(0, 0x1234), new Big(100, 1));
+    BigInteger far = BigInteger.ONE.shiftLeft(40).add(BigInteger.valueOf(3));
+    Bits<Big> shifted = Bits.shiftLeft(a, far);
+    Sparse.Iterator<Big, BigInteger> i = shifted.iterator();
+    assertEquals(new Big(far, BigInteger.valueOf(0x1234)), i.next());
+    assertEquals(new Big(far.add(BigInteger.valueOf(100)), BigInteger.ONE), i.next());
+    assertFalse(i.hasNext());
+    assertEquals(value(a), value(Bits.shiftRight(shifted, far)));
+  }
+
+  // In order and not overlapping - but may touch.
+  static void assertNormalish(Bits<Big> bits) {
+    BigInteger end = null;
+    for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+      Big next = i.next();
+      if (end != null) {
+        assertTrue("Overlap at " + next.index(), next.index().compareTo(end) >= 0);
+      }
+      end = next.index().add(BigInteger.valueOf(next.bytes().length * 8));
+    }
+  }
+
+  /**
+   * Test of writeTo in all sorts of bases.
+   */
+  @Test
+  public void testWriteTo() throws IOException {
+    Random r = new Random(12);
+    int[] bases = {2, 3, 4, 8, 10, 16, 32, 36};
+    for (int t = 0; t < 50; t++) {
+      HugeBits h = BitsTest.random(r, r.nextInt(t < 45 ? 20 : 500), 64);
+      BigInteger expected = Bits.toBigInteger(h);
+      for (int base : bases) {
+        StringBuilder sb = new StringBuilder();
+        h.writeTo(sb, base);
+        assertEquals("Base " + base, expected.toString(base), sb.toString());
+      }
+      // Not on a byte so digits can be shared.
+      Bits<Big> shifted = Bits.shiftLeft(h, BigInteger.valueOf(r.nextInt(8)));
+      assertEquals(Bits.toBigInteger(shifted).toString(32), shifted.toString(32));
+    }
+    assertEquals("0", new HugeBits().toString(16));
+  }
+
+  /**
+   * Test of writeTo with a big gap.
+   */
+  @Test
+  public void testWriteToGap() throws IOException {
+    HugeBits h = new HugeBits(new Big(0, 0xAB), new Big(1 << 24, 0xCD));
+    String s = h.toString(16);
+    assertEquals((1 << 22) + 2, s.length());
+    assertTrue(s.startsWith("cd000"));
+    assertTrue(s.endsWith("000ab"));
+    // Other bases need it all in a BigInteger - a smaller gap will do.
+    HugeBits d = new HugeBits(new Big(0, 0xAB), new Big(1 << 20, 0xCD));
+    assertEquals(BigInteger.valueOf(0xCD).shiftLeft(1 << 20).add(BigInteger.valueOf(0xAB)).toString(10), d.toString(10));
+    // Too big for one.
+    HugeBits huge = new HugeBits(new Big(0, 0xAB), new Big(1L << 31, 0xCD));
+    try {
+      huge.toString(10);
+      fail("Too big for base 10");
+    } catch (ArithmeticException e) {
+      assertTrue(e.getMessage().contains("base 10"));
+    }
+  }
+
+  /**
+   * Test of testBit, nextSetBit and previousSetBit against BigInteger.
+   */
+  @Test
+  public void testBitQueries() throws IOException {
+    Random r = new Random(17);
+    for (int t = 0; t < 20; t++) {
+      HugeBits a = random(r, 1 + r.nextInt(20), 128);
+      // Some Runs too.
+      BigInteger from = BigInteger.valueOf(8 * r.nextInt(200));
+      Bits<Big> b = Bits.xor(a, Bits.ones(from, from.add(BigInteger.valueOf(8 * (RUN + r.nextInt(40))))));
+      BigInteger v = value(b);
+      for (Bits<Big> bits : Arrays.<Bits<Big>>asList(a, b, MappedBits.of(b), new BigBits(v))) {
+        BigInteger expected = value(bits);
+        assertEquals(BigInteger.valueOf(expected.getLowestSetBit()), bits.getLowestSetBit());
+        assertEquals(BigInteger.valueOf(expected.bitLength()), bits.bitLength());
+        for (int i = 0; i < expected.bitLength() + 20; i++) {
+          BigInteger bit = BigInteger.valueOf(i);
+          assertEquals("testBit " + i, expected.testBit(i), bits.testBit(bit));
+          assertEquals("nextSetBit " + i, nextSetBit(expected, i), bits.nextSetBit(bit));
+          assertEquals("previousSetBit " + i, previousSetBit(expected, i), bits.previousSetBit(bit));
+        }
+      }
+    }
+    // Nothing there.
+    HugeBits empty = new HugeBits();
+    assertFalse(empty.testBit(BigInteger.TEN));
+    assertEquals(BigInteger.ONE.negate(), empty.nextSetBit(BigInteger.ZERO));
+    assertEquals(BigInteger.ONE.negate(), empty.previousSetBit(BigInteger.TEN));
+    assertEquals(BigInteger.ONE.negate(), empty.getLowestSetBit());
+  }
+
+  /**
+   * Test of bit queries a long way up a Run.
+   */
+  @Test
+  public void testBitQueriesHuge() {
+    BigInteger far = BigInteger.TEN.pow(15);
+    Bits<Big> b = Bits.xor(Bits.ones(BigInteger.ZERO, far), new HugeBits(new Big(far.shiftRight(1), BigInteger.valueOf(0xFF))));
+    BigInteger hole = far.shiftRight(1);
+    assertTrue(b.testBit(hole.subtract(BigInteger.ONE)));
+    assertFalse(b.testBit(hole));
+    assertEquals(hole.add(Bits.EIGHT), b.nextSetBit(hole));
+    assertEquals(hole.subtract(BigInteger.ONE), b.previousSetBit(hole.add(BigInteger.ONE)));
+    assertEquals(far.subtract(BigInteger.ONE), b.previousSetBit(far.multiply(BigInteger.TEN)));
+    assertEquals(BigInteger.ONE.negate(), b.nextSetBit(far));
+    assertEquals(far, b.bitLength());
+  }
+
+  // Long enough to make a Run.
+  private static final int RUN = 32;
+
+  private static BigInteger nextSetBit(BigInteger v, int from) {
+    for (int i = from; i < v.bitLength(); i++) {
+      if (v.testBit(i)) {
+        return BigInteger.valueOf(i);
+      }
+    }
+    return BigInteger.ONE.negate();
+  }
+
+  private static BigInteger previousSetBit(BigInteger v, int at) {
+    for (int i = at; i >= 0; i--) {
+      if (v.testBit(i)) {
+        return BigInteger.valueOf(i);
+      }
+    }
+    return BigInteger.ONE.negate();
+  }
+
+  /**
+   * Test of skipTo against walking - on all sorts of Bits.
+   */
+  @Test
+  public void testSkipTo() throws IOException {
+    Random r = new Random(19);
+    for (int t = 0; t < 20; t++) {
+      HugeBits a = random(r, 1 + r.nextInt(300), 1 << 15);
+      BigInteger length = a.length();
+      List<Big> all = new ArrayList<>();
+      for (Sparse.Iterator<Big, BigInteger> i = a.iterator(); i.hasNext();) {
+        all.add(i.next());
+      }
+      List<Bits<Big>> them = Arrays.<Bits<Big>>asList(a, MappedBits.of(a), RoaringBits.of(a),
+              Bits.shiftRight(Bits.shiftLeft(a, Bits.EIGHT), Bits.EIGHT), new BigBits(value(a)));
+      for (Bits<Big> bits : them) {
+        Sparse.Iterator<Big, BigInteger> i = bits.iterator();
+        // Roaring and BigBits cut them up differently so compare bits.
+        BigInteger expected = BigInteger.ZERO;
+        BigInteger got = BigInteger.ZERO;
+        BigInteger at = BigInteger.ZERO;
+        while (i.hasNext()) {
+          if (r.nextBoolean()) {
+            at = at.add(BigInteger.valueOf(r.nextInt(length.intValue() / 8 + 1)));
+            i.skipTo(at);
+            assertTrue(!i.hasNext() || i.index().add(i.length()).compareTo(at) > 0);
+          } else {
+            Big big = i.next();
+            got = got.or(big.value().shiftLeft(big.index().intValue()));
+          }
+        }
+        // Everything that was not skipped must have come out.
+        for (Big big : all) {
+          if (big.index().add(big.length()).compareTo(at) > 0) {
+            expected = expected.or(big.value().shiftLeft(big.index().intValue()));
+          }
+        }
+        BigInteger mask = BigInteger.ONE.shiftLeft(at.intValue()).subtract(BigInteger.ONE).not();
+        assertEquals(bits.getClass().getSimpleName(), expected.and(mask), got.and(mask));
+      }
+    }
+  }
+
+  /**
+   * Test of and between a tiny one and a huge one.
+   */
+  @Test
+  public void testAndGallops() {
+    Random r = new Random(20);
+    HugeBits huge = random(r, 50000, 64);
+    BigInteger hugeValue = Bits.toBigInteger(huge);
+    for (int t = 0; t < 100; t++) {
+      int at = r.nextInt(hugeValue.bitLength());
+      HugeBits tiny = new HugeBits(new Big(at, r.nextLong() & Long.MAX_VALUE), new Big(at + 1000 + r.nextInt(100000), 0xFF));
+      BigInteger expected = value(tiny).and(hugeValue);
+      Counted counted = new Counted(huge);
+      assertEquals(expected, value(Bits.apply(tiny, counted, Bits.Op.and)));
+      assertEquals(expected, value(Bits.apply(counted, tiny, Bits.Op.and)));
+      // Each side of tiny should cost a skip and a Big or two - not a walk.
+      assertTrue(counted.nexts + " of " + huge.size(), counted.nexts < 20);
+    }
+  }
+
+  // Counts the Bigs taken from the bits it wraps.
+  private static class Counted extends Bits<Big> {
+    private final Bits<Big> bits;
+    int nexts = 0;
+
+    Counted(Bits<Big> bits) {
+      this.bits = bits;
+    }
+
+    @Override
+    public Sparse.Iterator<Big, BigInteger> iterator() {
+      final Sparse.Iterator<Big, BigInteger> it = bits.iterator();
+      return new BitsIterator() {
+        @Override
+        protected void getNext() {
+          if (it.hasNext()) {
+            nexts += 1;
+            next = it.next();
+          }
+        }
+
+        @Override
+        public void skipTo(BigInteger at) {
+          if (next == null) {
+            it.skipTo(at);
+          }
+          super.skipTo(at);
+        }
+
+      };
+    }
+
+    @Override
+    public Sparse.Iterator<Big, BigInteger> reverseIterator() {
+      return bits.reverseIterator();
+    }
+
+    @Override
+    public BigInteger length() {
+      return bits.length();
+    }
+
+  }
+
+  /**
+   * Test of xor with itself.
+   */
+  @Test
+  public void testXorSelf() {
+    HugeBits a = random(new Random(7), 50, 256);
+    assertFalse(Bits.xor(a, a).iterator().hasNext());
+  }
+
+  /**
+   * Test of apply method either side of where indexes stop fitting in a long.
+   */
+  @Test
+  public void testApplyPastLong() {
+    BigInteger limit = BigInteger.valueOf(BigCursor.LIMIT);
+    Random r = new Random(8);
+    HugeBits.Builder all = new HugeBits.Builder();
+    HugeBits a = new HugeBits();
+    HugeBits b = new HugeBits();
+    // Alternate Bigs from a and b with a gap between - some right across the limit.
+    BigInteger at = limit.subtract(BigInteger.valueOf(8 * 200));
+    for (int i = 0; i < 40; i++) {
+      Big big = new Big(at, BigInteger.valueOf(r.nextLong() >>> 1).setBit(0).setBit(62));
+      (i % 2 == 0 ? a : b).add(big);
+      all.add(big);
+      at = big.end().add(Bits.EIGHT);
+    }
+    // And a Run across it.
+    Run run = new Run(limit.add(BigInteger.valueOf(8 * 1000)).subtract(BigInteger.valueOf(8 * 40)), BigInteger.valueOf(80), (byte) 0x55);
+    a.add(run);
+    all.add(run);
+    HugeBits expected = all.build();
+    assertBigs(expected, Bits.apply(a, b, Bits.Op.or));
+    assertBigs(expected, Bits.apply(a, b, Bits.Op.xor));
+    assertFalse(Bits.apply(a, b, Bits.Op.and).iterator().hasNext());
+    assertEquals(Sparse.NO_INDEX, new Big(limit, BigInteger.ONE).indexAsLong());
+    assertEquals(BigCursor.LIMIT - 8, new Big(limit.subtract(Bits.EIGHT), BigInteger.ONE).indexAsLong());
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class ConcurrentBitsTest {
+
+  /**
+   * Test of or method and the iterator against HugeBits.
+   */
+  @Test
+  public void testOr() {
+    Random r = new Random(1);
+    for (int t = 0; t < 10; t++) {
+      // Long ones so plenty run across chunks.
+      HugeBits h = BitsTest.random(r, 300, 64 << r.nextInt(6));
+      h = (HugeBits) Bits.apply(h, Bits.ones(BigInteger.valueOf(3000), BigInteger.valueOf(9000)), Bits.Op.xor);
+      ConcurrentBits c = new ConcurrentBits(h);
+      BitsTest.assertNormal(c);
+      assertEquals(BitsTest.value(h), BitsTest.value(c));
+      assertEquals(h.length(), c.length());
+      for (Bits.Op op : Bits.Op.values()) {
+        HugeBits other = BitsTest.random(r, 300, 64);
+        assertEquals(op.toString(), BitsTest.value(Bits.apply(h, other, op)), BitsTest.value(Bits.apply(c, other, op)));
+      }
+    }
+  }
+
+  /**
+   * Test of or with one Big across many chunks.
+   */
+  @Test
+  public void testOrWide() {
+    Random r = new Random(4);
+    for (int t = 0; t < 10; t++) {
+      HugeBits h = BitsTest.random(r, 100, 512);
+      ConcurrentBits c = new ConcurrentBits(h);
+      // Any byte in a chunk to start with.
+      Big wide = new Big(BigInteger.valueOf(8 * r.nextInt(5000)), new BigInteger(50 * ConcurrentBits.CHUNK + r.nextInt(1000), r));
+      c.or(wide);
+      assertEquals(BitsTest.value(h).or(wide.value().shiftLeft(wide.index().intValue())), BitsTest.value(c));
+      BitsTest.assertNormal(c);
+    }
+  }
+
+  /**
+   * Test of setBit and clearBit.
+   */
+  @Test
+  public void testSetClear() {
+    Random r = new Random(2);
+    ConcurrentBits c = new ConcurrentBits();
+    BigInteger v = BigInteger.ZERO;
+    for (int i = 0; i < 5000; i++) {
+      int bit = r.nextInt(20000);
+      if (r.nextInt(3) == 0) {
+        c.clearBit(BigInteger.valueOf(bit));
+        v = v.clearBit(bit);
+      } else {
+        c.setBit(BigInteger.valueOf(bit));
+        v = v.setBit(bit);
+      }
+      assertEquals(v.testBit(bit), c.testBit(BigInteger.valueOf(bit)));
+    }
+    assertEquals(v, BitsTest.value(c));
+    BitsTest.assertNormal(c);
+    assertEquals(BigInteger.valueOf(v.getLowestSetBit()), c.getLowestSetBit());
+    // Clear the lot and it is empty.
+    for (int bit = 0; bit < 20000; bit++) {
+      c.clearBit(BigInteger.valueOf(bit));
+    }
+    assertFalse(c.iterator().hasNext());
+    assertEquals(BigInteger.ZERO, c.length());
+  }
+
+  /**
+   * Test of skipTo against HugeBits.
+   */
+  @Test
+  public void testSkipTo() {
+    Random r = new Random(3);
+    HugeBits h = BitsTest.random(r, 2000, 512);
+    ConcurrentBits c = new ConcurrentBits(h);
+    for (int t = 0; t < 100; t++) {
+      Sparse.Iterator<Big, BigInteger> hi = h.iterator();
+      Sparse.Iterator<Big, BigInteger> ci = c.iterator();
+      BigInteger at = BigInteger.ZERO;
+      for (int s = 0; s < 5; s++) {
+        at = at.add(BigInteger.valueOf(r.nextInt(100000)));
+        hi.skipTo(at);
+        ci.skipTo(at);
+        assertEquals(hi.hasNext() ? hi.next() : null, ci.hasNext() ? ci.next() : null);
+      }
+    }
+    // Backwards too.
+    List<Big> back = new ArrayList<>();
+    for (Sparse.Iterator<Big, BigInteger> i = c.reverseIterator(); i.hasNext();) {
+      back.add(0, i.next());
+    }
+    assertEquals(h.size(), back.size());
+  }
+
+  /**
+   * Test of many threads setting bits at once.
+   */
+  @Test
+  public void testThreads() throws Exception {
+    final ConcurrentBits c = new ConcurrentBits();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<BigInteger>> done = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final Random r = new Random(t);
+        done.add(pool.submit(new Callable<BigInteger>() {
+          @Override
+          public BigInteger call() {
+            BigInteger mine = BigInteger.ZERO;
+            for (int i = 0; i < 20000; i++) {
+              // All over the same few chunks.
+              int bit = r.nextInt(8 * ConcurrentBits.CHUNK);
+              if (r.nextBoolean()) {
+                c.setBit(BigInteger.valueOf(bit));
+                mine = mine.setBit(bit);
+              } else {
+                c.or(new Big(bit, 0x7FF));
+                mine = mine.or(BigInteger.valueOf(0x7FF).shiftLeft(bit));
+              }
+            }
+            return mine;
+          }
+
+        }));
+      }
+      BigInteger all = BigInteger.ZERO;
+      for (Future<BigInteger> f : done) {
+        all = all.or(f.get());
+      }
+      assertEquals(all, BitsTest.value(c));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+}
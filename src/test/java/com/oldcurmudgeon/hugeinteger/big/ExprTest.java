@@ -0,0 +1,76 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class ExprTest {
+
+  /**
+   * Test of evaluate method against applying one op at a time.
+   */
+  @Test
+  public void testEvaluate() {
+    Random r = new Random(5);
+    for (int t = 0; t < 100; t++) {
+      HugeBits a = BitsTest.random(r, 1 + r.nextInt(20), 16);
+      HugeBits b = BitsTest.random(r, 1 + r.nextInt(20), 16);
+      HugeBits c = BitsTest.random(r, 1 + r.nextInt(20), 16);
+      HugeBits d = BitsTest.random(r, 1 + r.nextInt(20), 16);
+      Bits<Big> expected = Bits.apply(Bits.apply(Bits.apply(a, b, Bits.Op.xor), c, Bits.Op.and), d, Bits.Op.or);
+      HugeBits got = Bits.expr(a).xor(b).and(c).or(d).evaluate();
+      assertEquals(BitsTest.value(expected), BitsTest.value(got));
+      BitsTest.assertNormal(got);
+      // And the other way up.
+      expected = Bits.apply(Bits.apply(a, b, Bits.Op.and), Bits.apply(c, d, Bits.Op.xor), Bits.Op.and);
+      got = Bits.expr(a).and(b).and(Bits.expr(c).xor(d)).evaluate();
+      assertEquals(BitsTest.value(expected), BitsTest.value(got));
+      BitsTest.assertNormal(got);
+    }
+  }
+
+  /**
+   * Test of an Expr used more than once.
+   */
+  @Test
+  public void testShared() {
+    Random r = new Random(6);
+    for (int t = 0; t < 100; t++) {
+      HugeBits a = BitsTest.random(r, 1 + r.nextInt(20), 16);
+      HugeBits b = BitsTest.random(r, 1 + r.nextInt(20), 16);
+      HugeBits c = BitsTest.random(r, 1 + r.nextInt(20), 16);
+      Expr ab = Bits.expr(a).and(b);
+      Bits<Big> expected = Bits.apply(Bits.apply(Bits.apply(a, b, Bits.Op.and), c, Bits.Op.or),
+              Bits.apply(a, b, Bits.Op.and), Bits.Op.xor);
+      HugeBits got = ab.or(c).xor(ab).evaluate();
+      assertEquals(BitsTest.value(expected), BitsTest.value(got));
+      // Same Bits twice.
+      assertFalse(Bits.expr(a).xor(a).evaluate().iterator().hasNext());
+    }
+  }
+
+  /**
+   * Test of and with operands that are far apart.
+   */
+  @Test
+  public void testAndFarApart() {
+    BigInteger far = BigInteger.ONE.shiftLeft(1000);
+    HugeBits a = new HugeBits(new Big(0, 0xFF), new Big(far, BigInteger.valueOf(0x0F)));
+    HugeBits b = new HugeBits(new Big(far, BigInteger.valueOf(0x3C)));
+    HugeBits c = new HugeBits(new Big(8, 0xFF));
+    HugeBits got = Bits.expr(a).and(b).or(Bits.expr(c).and(a)).evaluate();
+    Sparse.Iterator<Big, BigInteger> i = got.iterator();
+    assertEquals(new Big(far, BigInteger.valueOf(0x0C)), i.next());
+    assertFalse(i.hasNext());
+  }
+
+}
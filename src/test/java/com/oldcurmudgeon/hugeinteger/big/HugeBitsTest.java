@@ -0,0 +1,186 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class HugeBitsTest {
+
+  /**
+   * Test of Builder with Bigs in any order that overlap.
+   */
+  @Test
+  public void testBuilder() {
+    Random r = new Random(3);
+    for (int t = 0; t < 100; t++) {
+      HugeBits.Builder builder = new HugeBits.Builder();
+      BigInteger expected = BigInteger.ZERO;
+      for (int i = r.nextInt(30); i > 0; i--) {
+        Big big = new Big(r.nextInt(2000), new BigInteger(1 + r.nextInt(100), r));
+        builder.add(big);
+        expected = expected.add(big.value().shiftLeft(big.index().intValue()));
+      }
+      HugeBits built = builder.build();
+      assertEquals(expected, BitsTest.value(built));
+      BitsTest.assertNormal(built);
+    }
+  }
+
+  /**
+   * Test of Builder cutting out zero bytes and joining touching Bigs.
+   */
+  @Test
+  public void testBuilderNormalises() {
+    HugeBits built = new HugeBits.Builder()
+            .add(new Big(24, 0x12))
+            .add(new Big(0, 0x3400000056L))
+            .add(new Big(40, 0x78))
+            .build();
+    assertEquals(new BigInteger("783412000056", 16), BitsTest.value(built));
+    BitsTest.assertNormal(built);
+  }
+
+  /**
+   * Test of add method one Big at a time.
+   */
+  @Test
+  public void testAdd() {
+    Random r = new Random(4);
+    for (int t = 0; t < 50; t++) {
+      HugeBits h = new HugeBits();
+      BigInteger expected = BigInteger.ZERO;
+      for (int i = 0; i < 40; i++) {
+        Big big = new Big(r.nextInt(3000), new BigInteger(1 + r.nextInt(64), r));
+        h.add(big);
+        expected = expected.add(big.value().shiftLeft(big.index().intValue()));
+        assertEquals(expected, BitsTest.value(h));
+        BitsTest.assertNormal(h);
+      }
+    }
+  }
+
+  /**
+   * Test of add method where a carry joins up with the next Big.
+   */
+  @Test
+  public void testAddCarry() {
+    HugeBits h = new HugeBits(new Big(0, 0xFFFF), new Big(24, 0x01));
+    h.add(new Big(0, 1));
+    // 0x10000 + 0x1000000 - the carry fills the gap byte.
+    assertEquals(BigInteger.valueOf(0x1010000), BitsTest.value(h));
+    BitsTest.assertNormal(h);
+    h.add(new Big(16, 0xFF));
+    assertEquals(BigInteger.valueOf(0x2000000), BitsTest.value(h));
+    BitsTest.assertNormal(h);
+  }
+
+  /**
+   * Test of the constructor.
+   */
+  @Test
+  public void testConstructor() {
+    HugeBits h = new HugeBits(new Big(0, 1), new Big(0, 1), new Big(100, 0xFF00FF));
+    assertEquals(BigInteger.valueOf(2).add(BigInteger.valueOf(0xFF00FF).shiftLeft(100)), BitsTest.value(h));
+    BitsTest.assertNormal(h);
+  }
+
+  /**
+   * Test of rank and select against BigInteger - with adds in between.
+   */
+  @Test
+  public void testRankSelect() {
+    Random r = new Random(18);
+    // Enough Bigs for several blocks.
+    HugeBits h = (HugeBits) Bits.xor(BitsTest.random(r, 5 * RankIndex.BLOCK, 64), Bits.ones(BigInteger.valueOf(800), BigInteger.valueOf(1600)));
+    for (int t = 0; t < 10; t++) {
+      BigInteger v = BitsTest.value(h);
+      for (int i = 0, k = 0; i <= v.bitLength() + 8; i++) {
+        assertEquals("rank " + i, BigInteger.valueOf(k), h.rank(BigInteger.valueOf(i)));
+        if (v.testBit(i)) {
+          assertEquals("select " + k, BigInteger.valueOf(i), h.select(BigInteger.valueOf(k)));
+          k += 1;
+        }
+      }
+      assertEquals(BigInteger.ONE.negate(), h.select(BigInteger.valueOf(v.bitCount())));
+      // Change somewhere - the index must keep up.
+      h.add(new Big(r.nextInt(v.bitLength()), new BigInteger(1 + r.nextInt(100), r)));
+    }
+  }
+
+  /**
+   * Test of rank and select on a Run too big to build.
+   */
+  @Test
+  public void testRankSelectHuge() {
+    BigInteger far = BigInteger.TEN.pow(15);
+    HugeBits h = (HugeBits) Bits.xor(Bits.ones(BigInteger.ZERO, far), new HugeBits(new Big(far.shiftRight(1), BigInteger.valueOf(0xFF))));
+    assertEquals(far.subtract(Bits.EIGHT), h.rank(far.multiply(BigInteger.TEN)));
+    assertEquals(far.shiftRight(1), h.rank(far.shiftRight(1).add(Bits.EIGHT)));
+    assertEquals(far.shiftRight(1).add(Bits.EIGHT), h.select(far.shiftRight(1)));
+    assertEquals(far.subtract(BigInteger.ONE), h.select(far.subtract(BigInteger.valueOf(9))));
+  }
+
+  /**
+   * Test of word granularity - the same value in fewer Bigs.
+   */
+  @Test
+  public void testGranularity() {
+    Random r = new Random(9);
+    for (int t = 0; t < 20; t++) {
+      HugeBits a = BitsTest.random(r, 300, 8 * (1 + r.nextInt(20)));
+      HugeBits b = BitsTest.random(r, 300, 8 * (1 + r.nextInt(20)));
+      for (Bits.Op op : Bits.Op.values()) {
+        HugeBits bytes = (HugeBits) Bits.apply(a, b, op);
+        HugeBits words = (HugeBits) Bits.apply(a, b, op, HugeBits.WORDS);
+        assertEquals(BitsTest.value(bytes), BitsTest.value(words));
+        assertTrue(words.size() <= bytes.size());
+        assertWords(words);
+        // Words in make the same words out.
+        HugeBits again = (HugeBits) Bits.apply(words, new HugeBits(), Bits.Op.or, HugeBits.WORDS);
+        BitsTest.assertBigs(words, again);
+        // And the Builder does the same.
+        HugeBits.Builder builder = new HugeBits.Builder().granularity(HugeBits.WORDS);
+        for (Sparse.Iterator<Big, BigInteger> i = bytes.iterator(); i.hasNext();) {
+          builder.add(i.next());
+        }
+        BitsTest.assertBigs(words, builder.build());
+      }
+    }
+    // Adding keeps the granularity.
+    HugeBits h = new HugeBits(HugeBits.WORDS);
+    h.add(new Big(0, 0xFF));
+    h.add(new Big(32, 0xFF));
+    assertEquals(1, h.size());
+    h.add(new Big(200, 0xFF));
+    assertEquals(2, h.size());
+  }
+
+  // No gap of a word or more inside a Big and none shorter between them.
+  private static void assertWords(HugeBits bits) {
+    BigInteger end = null;
+    for (Sparse.Iterator<Big, BigInteger> i = bits.iterator(); i.hasNext();) {
+      Big next = i.next();
+      if (end != null && next.index().subtract(end).compareTo(BigInteger.valueOf(64)) < 0) {
+        fail("Gap too short at " + next.index());
+      }
+      int zeros = 0;
+      for (byte b : next.bytes()) {
+        zeros = b == 0 ? zeros + 1 : 0;
+        if (zeros >= HugeBits.WORDS) {
+          fail("Gap too long at " + next.index());
+        }
+      }
+      end = next.end();
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class MappedBitsTest {
+
+  /**
+   * Test of write and open - with tiny maps so values and entries go across them.
+   */
+  @Test
+  public void testWriteOpen() throws IOException {
+    Random r = new Random(7);
+    for (int t = 0; t < 20; t++) {
+      HugeBits h = BitsTest.random(r, r.nextInt(50), 64);
+      File file = File.createTempFile("test", ".map");
+      try {
+        MappedBits.write(h, file);
+        MappedBits m = MappedBits.open(file, 6);
+        assertEquals(BitsTest.value(h), BitsTest.value(m));
+        assertEquals(h.length(), m.length());
+        // Same Bigs both ways.
+        Sparse.Iterator<Big, BigInteger> i = h.reverseIterator();
+        for (Sparse.Iterator<Big, BigInteger> j = m.reverseIterator(); j.hasNext();) {
+          assertEquals(i.next(), j.next());
+        }
+        assertFalse(i.hasNext());
+      } finally {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Test of ranges against the HugeBits they came from.
+   */
+  @Test
+  public void testRanges() throws IOException {
+    Random r = new Random(8);
+    HugeBits h = BitsTest.random(r, 200, 64);
+    MappedBits m = MappedBits.of(h);
+    assertEquals(BitsTest.value(h), BitsTest.value(m));
+    BigInteger top = h.length().add(BigInteger.valueOf(100));
+    for (int t = 0; t < 100; t++) {
+      BigInteger at = BigInteger.valueOf(r.nextInt(top.intValue()) & ~7);
+      assertEquals(h.boundary(at), m.boundary(at));
+      BigInteger from = h.boundary(at);
+      BigInteger to = h.boundary(from.add(BigInteger.valueOf(r.nextInt(2000) & ~7)));
+      Sparse.Iterator<Big, BigInteger> i = h.iterator(from, to);
+      for (Sparse.Iterator<Big, BigInteger> j = m.iterator(from, to); j.hasNext();) {
+        assertEquals(i.next(), j.next());
+      }
+      assertFalse(i.hasNext());
+    }
+    // And in a merge.
+    assertEquals(BitsTest.value(Bits.xor(h, h)), BitsTest.value(Bits.xor(m, h)));
+    assertEquals(BitsTest.value(Bits.xor(h, h, new java.util.concurrent.ForkJoinPool(4))),
+            BitsTest.value(Bits.xor(m, h, new java.util.concurrent.ForkJoinPool(4))));
+  }
+
+  /**
+   * Test of Runs - written as they are, however long.
+   */
+  @Test
+  public void testRuns() throws IOException {
+    // Far too long to build - with a Big touching each end.
+    BigInteger huge = BigInteger.ONE.shiftLeft(40);
+    HugeBits h = new HugeBits(new Big(0, 0x0F0F), new Run(BigInteger.valueOf(16), huge, (byte) 0xFF), new Big(huge.add(BigInteger.valueOf(16)).multiply(Bits.EIGHT), BigInteger.ONE));
+    MappedBits m = MappedBits.of(h);
+    assertEquals(3, m.size());
+    assertEquals(h.length(), m.length());
+    BitsTest.assertBigs(h, m);
+    BitsTest.assertNormal(m);
+    Sparse.Iterator<Big, BigInteger> i = m.iterator();
+    i.skipTo(huge);
+    assertTrue(i.next() instanceof Run);
+    // And small ones against the values.
+    Random r = new Random(9);
+    for (int t = 0; t < 10; t++) {
+      HugeBits x = (HugeBits) Bits.apply(BitsTest.random(r, 20, 64), Bits.ones(BigInteger.valueOf(r.nextInt(500)), BigInteger.valueOf(500 + r.nextInt(2000))), Bits.Op.xor);
+      MappedBits y = MappedBits.of(x);
+      BitsTest.assertBigs(x, y);
+      assertEquals(BitsTest.value(x), BitsTest.value(y));
+    }
+  }
+
+  /**
+   * Test of writing zero - and nothing at all.
+   */
+  @Test
+  public void testZero() throws IOException {
+    MappedBits zero = MappedBits.of(new BigBits(BigInteger.ZERO));
+    assertEquals(0, zero.size());
+    assertEquals(BigInteger.ZERO, zero.length());
+    assertFalse(zero.iterator().hasNext());
+    assertEquals(0, MappedBits.of(new HugeBits()).size());
+  }
+
+  /**
+   * Test of opening something else.
+   */
+  @Test(expected = IOException.class)
+  public void testNotMapped() throws IOException {
+    File file = File.createTempFile("test", ".map");
+    try {
+      MappedBits.open(file);
+    } finally {
+      file.delete();
+    }
+  }
+
+}
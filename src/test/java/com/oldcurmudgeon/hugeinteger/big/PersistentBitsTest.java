@@ -0,0 +1,173 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class PersistentBitsTest {
+
+  /**
+   * Test of of method.
+   */
+  @Test
+  public void testOf() {
+    Random r = new Random(1);
+    for (int t = 0; t < 10; t++) {
+      HugeBits h = BitsTest.random(r, 200, 64);
+      PersistentBits p = PersistentBits.of(h);
+      BitsTest.assertBigs(h, p);
+      assertEquals(h.size(), p.size());
+      assertEquals(h.length(), p.length());
+      BitsTest.assertBigs(h, PersistentBits.of(RoaringBits.of(h)));
+    }
+    assertEquals(BigInteger.ZERO, PersistentBits.EMPTY.length());
+    assertFalse(PersistentBits.EMPTY.iterator().hasNext());
+  }
+
+  /**
+   * Test of add method - every version stays as it was.
+   */
+  @Test
+  public void testAdd() {
+    Random r = new Random(2);
+    HugeBits h = new HugeBits();
+    List<PersistentBits> versions = new ArrayList<>();
+    List<BigInteger> values = new ArrayList<>();
+    PersistentBits p = PersistentBits.EMPTY;
+    for (int i = 0; i < 500; i++) {
+      // Close together so plenty of them join and carry.
+      Big big = new Big(r.nextInt(4000), r.nextInt() & 0xFFFFFFFFL);
+      h.add(big);
+      p = p.add(big);
+      versions.add(p);
+      values.add(BitsTest.value(h));
+    }
+    BitsTest.assertBigs(h, p);
+    BitsTest.assertNormal(p);
+    for (int i = 0; i < versions.size(); i++) {
+      assertEquals(values.get(i), BitsTest.value(versions.get(i)));
+    }
+  }
+
+  /**
+   * Test of add into Runs - as HugeBits.add.
+   */
+  @Test
+  public void testAddToRun() {
+    // Far too long to build.
+    PersistentBits mask = PersistentBits.of(Bits.ones(BigInteger.ZERO, BigInteger.ONE.shiftLeft(36)));
+    PersistentBits sum = mask.add(new Big(64, 1));
+    BitsTest.assertBigs(new HugeBits(new Big(BigInteger.ZERO, RunTest.ones(0, 64)), new Big(BigInteger.ONE.shiftLeft(36), BigInteger.ONE)), sum);
+    // Unchanged.
+    assertTrue(mask.iterator().next() instanceof Run);
+    Random r = new Random(6);
+    for (int t = 0; t < 100; t++) {
+      HugeBits h = Bits.ones(BigInteger.valueOf(r.nextInt(2000)), BigInteger.valueOf(2000 + r.nextInt(2000)));
+      h = (HugeBits) Bits.add(h, BitsTest.random(r, 1 + r.nextInt(10), 64));
+      PersistentBits p = PersistentBits.of(h);
+      Big big = r.nextBoolean() ? new Big(r.nextInt(5000), r.nextLong() & Long.MAX_VALUE)
+              : new Run(BigInteger.valueOf(8 * r.nextInt(500)), BigInteger.valueOf(32 + r.nextInt(100)), (byte) (1 + r.nextInt(255)));
+      h.add(big);
+      p = p.add(big);
+      assertEquals(Bits.toBigInteger(h), Bits.toBigInteger(p));
+      BitsTest.assertNormal(p);
+    }
+  }
+
+  /**
+   * Test of apply method against the merge.
+   */
+  @Test
+  public void testApply() {
+    Random r = new Random(3);
+    for (int t = 0; t < 10; t++) {
+      HugeBits a = BitsTest.random(r, 300, 64);
+      HugeBits b = BitsTest.random(r, 1 + r.nextInt(300), 64 << r.nextInt(4));
+      // Some runs too.
+      b = (HugeBits) Bits.apply(b, Bits.ones(BigInteger.valueOf(1000), BigInteger.valueOf(5000)), Bits.Op.xor);
+      PersistentBits pa = PersistentBits.of(a);
+      PersistentBits pb = PersistentBits.of(b);
+      for (Bits.Op op : Bits.Op.values()) {
+        Bits<Big> got = Bits.apply(pa, pb, op);
+        assertTrue(got instanceof PersistentBits);
+        BitsTest.assertBigs(Bits.apply(a, b, op), got);
+        BitsTest.assertBigs(Bits.apply(b, a, op), Bits.apply(pb, pa, op));
+      }
+      // Unchanged.
+      BitsTest.assertBigs(a, pa);
+      BitsTest.assertBigs(b, pb);
+    }
+  }
+
+  /**
+   * Test of sharing between versions.
+   */
+  @Test
+  public void testShared() {
+    Random r = new Random(4);
+    PersistentBits p = PersistentBits.of(BitsTest.random(r, 10000, 64));
+    // A few changes only copy their paths.
+    PersistentBits q = p;
+    for (int i = 0; i < 10; i++) {
+      q = q.add(new Big(BigInteger.valueOf(r.nextInt(100000)), BigInteger.valueOf(r.nextInt(1000) + 1)));
+    }
+    assertTrue(q.shared(p) > q.size() - 1000);
+    PersistentBits x = (PersistentBits) Bits.apply(p, PersistentBits.of(new HugeBits(new Big(40000, 0xFF))), Bits.Op.xor);
+    assertTrue(x.shared(p) > x.size() - 100);
+    // Xor it back and it is the same Bigs - mostly the same nodes too.
+    PersistentBits y = (PersistentBits) Bits.apply(x, PersistentBits.of(new HugeBits(new Big(40000, 0xFF))), Bits.Op.xor);
+    BitsTest.assertBigs(p, y);
+    assertTrue(y.shared(p) > y.size() - 100);
+  }
+
+  /**
+   * Test of the searches and iterators.
+   */
+  @Test
+  public void testIterators() {
+    Random r = new Random(5);
+    HugeBits h = BitsTest.random(r, 1000, 128);
+    PersistentBits p = PersistentBits.of(h);
+    for (int t = 0; t < 100; t++) {
+      BigInteger at = BigInteger.valueOf(r.nextInt(h.length().intValue() + 100));
+      assertEquals(h.nextSetBit(at), p.nextSetBit(at));
+      assertEquals(h.previousSetBit(at), p.previousSetBit(at));
+      assertEquals(h.testBit(at), p.testBit(at));
+      assertEquals(h.boundary(at), p.boundary(at));
+      BigInteger to = at.add(BigInteger.valueOf(r.nextInt(5000)));
+      BitsTest.assertBigs(copy(h.iterator(at, to)), copy(p.iterator(at, to)));
+      // Skipping lands on the same one.
+      Sparse.Iterator<Big, BigInteger> hi = h.iterator();
+      Sparse.Iterator<Big, BigInteger> pi = p.iterator();
+      hi.skipTo(at);
+      pi.skipTo(at);
+      assertEquals(hi.hasNext() ? hi.next() : null, pi.hasNext() ? pi.next() : null);
+    }
+    // Backwards.
+    List<Big> back = new ArrayList<>();
+    for (Sparse.Iterator<Big, BigInteger> i = p.reverseIterator(); i.hasNext();) {
+      back.add(0, i.next());
+    }
+    BitsTest.assertBigs(h, copy(back.iterator()));
+  }
+
+  private static HugeBits copy(java.util.Iterator<Big> it) {
+    HugeBits.Builder b = new HugeBits.Builder();
+    while (it.hasNext()) {
+      b.add(it.next());
+    }
+    return b.build();
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class RoaringBitsTest {
+  // Sparse, dense and runs of ones all mixed up over a few chunks.
+  static HugeBits mixed(Random r) {
+    HugeBits.Appender bits = new HugeBits.Appender();
+    for (int chunk = 0; chunk < 6; chunk++) {
+      bits.skipTo(BigInteger.valueOf(r.nextInt(4) * Container.BITS).add(bits.position()));
+      switch (r.nextInt(3)) {
+        case 0:
+          // Sparse.
+          for (int i = 0; i < 50; i++) {
+            bits.skip(r.nextInt(100));
+            bits.write((byte) (1 << r.nextInt(8)));
+          }
+          break;
+        case 1:
+          // Dense.
+          for (int i = 0; i < 7000; i++) {
+            bits.write((byte) r.nextInt());
+          }
+          break;
+        default:
+          // Runs.
+          for (int i = 0; i < 10; i++) {
+            bits.skip(r.nextInt(1000));
+            for (int j = r.nextInt(500); j > 0; j--) {
+              bits.write((byte) -1);
+            }
+          }
+      }
+    }
+    return bits.done();
+  }
+
+  /**
+   * Test of of method.
+   */
+  @Test
+  public void testOf() {
+    Random r = new Random(1);
+    for (int t = 0; t < 10; t++) {
+      HugeBits h = mixed(r);
+      RoaringBits rb = RoaringBits.of(h);
+      assertEquals(BitsTest.value(h), BitsTest.value(rb));
+      assertEquals(h.length(), rb.length());
+      assertEquals(BitsTest.value(h).bitCount(), rb.cardinality());
+    }
+  }
+
+  /**
+   * Test of apply method against the merge.
+   */
+  @Test
+  public void testApply() {
+    Random r = new Random(2);
+    for (int t = 0; t < 10; t++) {
+      HugeBits a = mixed(r);
+      HugeBits b = mixed(r);
+      for (Bits.Op op : Bits.Op.values()) {
+        Bits<Big> expected = Bits.apply(a, b, op);
+        Bits<Big> got = Bits.apply(RoaringBits.of(a), RoaringBits.of(b), op);
+        assertTrue(got instanceof RoaringBits);
+        assertEquals(op.toString(), BitsTest.value(expected), BitsTest.value(got));
+      }
+    }
+  }
+
+  /**
+   * Test of andNot method.
+   */
+  @Test
+  public void testAndNot() {
+    Random r = new Random(4);
+    for (int t = 0; t < 10; t++) {
+      HugeBits a = mixed(r);
+      HugeBits b = mixed(r);
+      RoaringBits ra = RoaringBits.of(a);
+      assertEquals(BitsTest.value(a).andNot(BitsTest.value(b)), BitsTest.value(RoaringBits.andNot(ra, RoaringBits.of(b))));
+      // Nothing left of itself.
+      assertEquals(BigInteger.ZERO, BitsTest.value(RoaringBits.andNot(ra, ra)));
+    }
+  }
+
+  /**
+   * Test of reverseIterator method.
+   */
+  @Test
+  public void testReverseIterator() {
+    RoaringBits rb = RoaringBits.of(mixed(new Random(3)));
+    BigInteger last = null;
+    int n = 0;
+    for (Sparse.Iterator<Big, BigInteger> i = rb.reverseIterator(); i.hasNext(); n++) {
+      Big next = i.next();
+      assertTrue(last == null || next.index().compareTo(last) < 0);
+      last = next.index();
+    }
+    for (Sparse.Iterator<Big, BigInteger> i = rb.iterator(); i.hasNext(); n--) {
+      i.next();
+    }
+    assertEquals(0, n);
+  }
+
+}
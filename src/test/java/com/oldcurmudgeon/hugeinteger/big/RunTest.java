@@ -0,0 +1,186 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class RunTest {
+  // Far too big to build.
+  static final BigInteger HUGE = BigInteger.TEN.pow(12);
+
+  static BigInteger ones(int from, int to) {
+    return BigInteger.ONE.shiftLeft(to).subtract(BigInteger.ONE.shiftLeft(from));
+  }
+
+  /**
+   * Test of ones against BigInteger.
+   */
+  @Test
+  public void testOnes() {
+    Random r = new Random(15);
+    for (int t = 0; t < 200; t++) {
+      int from = r.nextInt(1000);
+      int to = from + r.nextInt(1000);
+      HugeBits h = Bits.ones(BigInteger.valueOf(from), BigInteger.valueOf(to));
+      assertEquals(ones(from, to), Bits.toBigInteger(h));
+      BitsTest.assertNormal(h);
+    }
+  }
+
+  /**
+   * Test of ops on Runs too big to build.
+   */
+  @Test
+  public void testHugeRuns() {
+    HugeBits mask = Bits.ones(BigInteger.ZERO, HUGE);
+    assertEquals(HUGE, mask.length());
+    HugeBits half = Bits.ones(HUGE.divide(BigInteger.valueOf(2)), HUGE.multiply(BigInteger.valueOf(2)));
+    // Runs with Runs make Runs.
+    Bits<Big> and = Bits.apply(mask, half, Bits.Op.and);
+    assertBigs(and, new Run(HUGE.divide(BigInteger.valueOf(2)), HUGE.divide(BigInteger.valueOf(16)), (byte) 0xFF));
+    Bits<Big> or = Bits.apply(mask, half, Bits.Op.or);
+    assertBigs(or, new Run(BigInteger.ZERO, HUGE.divide(BigInteger.valueOf(4)), (byte) 0xFF));
+    Bits<Big> xor = Bits.apply(mask, half, Bits.Op.xor);
+    assertBigs(xor, new Run(BigInteger.ZERO, HUGE.divide(BigInteger.valueOf(16)), (byte) 0xFF),
+            new Run(HUGE, HUGE.divide(BigInteger.valueOf(8)), (byte) 0xFF));
+    // A literal in the middle only costs its own bytes.
+    HugeBits literal = new HugeBits(new Big(HUGE.divide(BigInteger.valueOf(4)), BigInteger.valueOf(0x0F0F)));
+    Bits<Big> holed = Bits.xor(mask, literal);
+    assertEquals(HUGE, holed.length());
+    Sparse.Iterator<Big, BigInteger> i = holed.iterator();
+    assertTrue(i.next() instanceof Run);
+    assertEquals(new Big(HUGE.divide(BigInteger.valueOf(4)), BigInteger.valueOf(0xF0F0)), i.next());
+    assertTrue(i.next() instanceof Run);
+    assertFalse(i.hasNext());
+    BitsTest.assertNormal(holed);
+    // And back again.
+    assertBigs(Bits.xor(holed, literal), mask.iterator().next());
+  }
+
+  /**
+   * Test of add and subtract with Runs.
+   */
+  @Test
+  public void testArithmetic() {
+    // 2^N - 1 + 1 = 2^N.
+    Bits<Big> sum = Bits.add(Bits.ones(BigInteger.ZERO, HUGE), new HugeBits(new Big(0, 1)));
+    assertBigs(sum, new Big(HUGE, BigInteger.ONE));
+    // 2^N - 1 the other way.
+    Bits<Big> difference = Bits.subtract(new HugeBits(new Big(HUGE, BigInteger.ONE)), new HugeBits(new Big(0, 1)));
+    assertBigs(difference, new Run(BigInteger.ZERO, HUGE.divide(Bits.EIGHT), (byte) 0xFF));
+    // Small enough to check.
+    Random r = new Random(16);
+    for (int t = 0; t < 100; t++) {
+      HugeBits a = Bits.ones(BigInteger.valueOf(r.nextInt(2000)), BigInteger.valueOf(2000 + r.nextInt(2000)));
+      HugeBits b = BitsTest.random(r, 1 + r.nextInt(10), 64);
+      assertEquals(Bits.toBigInteger(a).add(Bits.toBigInteger(b)), Bits.toBigInteger(Bits.add(a, b)));
+      assertEquals(Bits.toBigInteger(a).xor(Bits.toBigInteger(b)), Bits.toBigInteger(Bits.xor(a, b)));
+      BigInteger big = Bits.toBigInteger(a).add(Bits.toBigInteger(b));
+      assertEquals(big.subtract(Bits.toBigInteger(a)), Bits.toBigInteger(Bits.subtract(Bits.add(a, b), a)));
+    }
+  }
+
+  /**
+   * Test of HugeBits.add into Runs.
+   */
+  @Test
+  public void testAddToRun() {
+    // 2^N - 1 + 2^64 = 2^N + 2^64 - 1 - without building the Run.
+    HugeBits mask = Bits.ones(BigInteger.ZERO, HUGE);
+    mask.add(new Big(64, 1));
+    assertBigs(mask, new Big(BigInteger.ZERO, ones(0, 64)), new Big(HUGE, BigInteger.ONE));
+    // Small enough to check - against Bits.add.
+    Random r = new Random(17);
+    for (int t = 0; t < 100; t++) {
+      HugeBits a = Bits.ones(BigInteger.valueOf(r.nextInt(2000)), BigInteger.valueOf(2000 + r.nextInt(2000)));
+      a = (HugeBits) Bits.add(a, BitsTest.random(r, 1 + r.nextInt(10), 64));
+      Big big = r.nextBoolean() ? new Big(r.nextInt(5000), r.nextLong() & Long.MAX_VALUE)
+              : new Run(BigInteger.valueOf(8 * r.nextInt(500)), BigInteger.valueOf(32 + r.nextInt(100)), (byte) (1 + r.nextInt(255)));
+      BigInteger expected = Bits.toBigInteger(Bits.add(a, new HugeBits(big)));
+      a.add(big);
+      assertEquals(expected, Bits.toBigInteger(a));
+      BitsTest.assertNormal(a);
+    }
+  }
+
+  /**
+   * Test of Expr over Runs.
+   */
+  @Test
+  public void testExpr() {
+    HugeBits mask = Bits.ones(BigInteger.ZERO, HUGE);
+    assertBigs(Bits.expr(mask).and(mask).evaluate(), mask.iterator().next());
+    assertBigs(Bits.expr(mask).xor(mask).evaluate());
+    // A literal in the middle only costs its own bytes.
+    HugeBits literal = new HugeBits(new Big(HUGE.divide(BigInteger.valueOf(4)), BigInteger.valueOf(0x0F0F)));
+    BitsTest.assertBigs(Bits.xor(mask, literal), Bits.expr(mask).xor(literal).evaluate());
+    BitsTest.assertBigs(Bits.apply(mask, literal, Bits.Op.and), Bits.expr(mask).and(literal).and(mask).evaluate());
+  }
+
+  /**
+   * Test of copying Runs.
+   */
+  @Test
+  public void testCopy() {
+    Run run = new Run(BigInteger.valueOf(64), BigInteger.valueOf(100), (byte) 0xFF);
+    assertEquals(run, Big.copyOf(run));
+    Big copy = new Big(run);
+    assertFalse(copy instanceof Run);
+    assertEquals(run.value(), copy.value());
+    assertEquals(run.index(), copy.index());
+  }
+
+  /**
+   * Test of shifting Runs.
+   */
+  @Test
+  public void testShift() {
+    HugeBits mask = Bits.ones(BigInteger.ZERO, HUGE);
+    assertBigs(Bits.shiftLeft(mask, HUGE), new Run(HUGE, HUGE.divide(Bits.EIGHT), (byte) 0xFF));
+    assertBigs(Bits.shiftRight(mask, HUGE.divide(BigInteger.valueOf(2))), new Run(BigInteger.ZERO, HUGE.divide(BigInteger.valueOf(16)), (byte) 0xFF));
+    // Not on a byte - only the edges change.
+    HugeBits small = Bits.ones(BigInteger.valueOf(3), BigInteger.valueOf(900));
+    assertEquals(ones(8, 905), Bits.toBigInteger(Bits.shiftLeft(small, BigInteger.valueOf(5))));
+    assertBigs(Bits.shiftLeft(mask, BigInteger.valueOf(3)), new Big(0, 0xF8),
+            new Run(Bits.EIGHT, HUGE.divide(Bits.EIGHT).subtract(BigInteger.ONE), (byte) 0xFF), new Big(HUGE, BigInteger.valueOf(7)));
+    assertBigs(Bits.shiftRight(mask, BigInteger.valueOf(3)),
+            new Run(BigInteger.ZERO, HUGE.divide(Bits.EIGHT).subtract(BigInteger.ONE), (byte) 0xFF), new Big(HUGE.subtract(Bits.EIGHT), BigInteger.valueOf(0x1F)));
+    // Backwards too.
+    Sparse.Iterator<Big, BigInteger> back = Bits.shiftLeft(mask, BigInteger.valueOf(3)).reverseIterator();
+    assertEquals(new Big(HUGE, BigInteger.valueOf(7)), back.next());
+    assertTrue(back.next() instanceof Run);
+    assertEquals(new Big(0, 0xF8), back.next());
+    assertFalse(back.hasNext());
+  }
+
+  /**
+   * Test of streaming Runs.
+   */
+  @Test
+  public void testStream() throws IOException {
+    HugeBits h = (HugeBits) Bits.xor(Bits.ones(BigInteger.ZERO, HUGE), new HugeBits(new Big(800, 0x1234)));
+    HugeBits back = BitsStream.readFrom(new ByteArrayInputStream(BitsStreamTest.write(h, true)));
+    BitsTest.assertBigs(h, back);
+  }
+
+  // Exactly those Bigs.
+  static void assertBigs(Bits<Big> got, Big... expected) {
+    Sparse.Iterator<Big, BigInteger> i = got.iterator();
+    for (Big big : expected) {
+      assertEquals(big, i.next());
+    }
+    assertFalse(i.hasNext());
+  }
+
+}
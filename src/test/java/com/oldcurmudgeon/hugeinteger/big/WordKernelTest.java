@@ -0,0 +1,107 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.oldcurmudgeon.hugeinteger.big;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paul Caswell
+ */
+public class WordKernelTest {
+
+  /**
+   * Test of op method - plain and whichever KERNEL is - in place too.
+   */
+  @Test
+  public void testOp() {
+    Random r = new Random(1);
+    for (WordKernel kernel : new WordKernel[]{new WordKernel(), WordKernel.KERNEL}) {
+      // Lengths that do and do not fill whole vectors.
+      for (int n = 0; n < 40; n++) {
+        long[] a = words(r, n + 3);
+        long[] b = words(r, n + 3);
+        for (Bits.Op op : Bits.Op.values()) {
+          long[] into = new long[n + 3];
+          kernel.op(op, a, b, into, n);
+          for (int i = 0; i < n; i++) {
+            assertEquals(kernel + " " + op, op.op(a[i], b[i]), into[i]);
+          }
+          // Nothing past n.
+          assertEquals(0, into[n]);
+          // In place.
+          long[] in = a.clone();
+          kernel.op(op, in, b, in, n);
+          for (int i = 0; i < n + 3; i++) {
+            assertEquals(i < n ? into[i] : a[i], in[i]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Test of andNot method - in place too.
+   */
+  @Test
+  public void testAndNot() {
+    Random r = new Random(3);
+    for (WordKernel kernel : new WordKernel[]{new WordKernel(), WordKernel.KERNEL}) {
+      for (int n = 0; n < 40; n++) {
+        long[] a = words(r, n + 3);
+        long[] b = words(r, n + 3);
+        long[] into = new long[n + 3];
+        kernel.andNot(a, b, into, n);
+        for (int i = 0; i < n; i++) {
+          assertEquals(kernel.toString(), a[i] & ~b[i], into[i]);
+        }
+        assertEquals(0, into[n]);
+        long[] in = a.clone();
+        kernel.andNot(in, b, in, n);
+        for (int i = 0; i < n + 3; i++) {
+          assertEquals(i < n ? into[i] : a[i], in[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Test of bitCount method.
+   */
+  @Test
+  public void testBitCount() {
+    Random r = new Random(2);
+    for (WordKernel kernel : new WordKernel[]{new WordKernel(), WordKernel.KERNEL}) {
+      for (int n = 0; n < 40; n++) {
+        long[] words = words(r, n + 1);
+        words[0] = -1L;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+          count += Long.bitCount(words[i]);
+        }
+        assertEquals(kernel.toString(), count, kernel.bitCount(words, n));
+      }
+      assertEquals(64 * Container.WORDS, kernel.bitCount(filled(Container.WORDS), Container.WORDS));
+    }
+  }
+
+  private static long[] words(Random r, int n) {
+    long[] words = new long[n];
+    for (int i = 0; i < n; i++) {
+      words[i] = r.nextLong();
+    }
+    return words;
+  }
+
+  private static long[] filled(int n) {
+    long[] words = new long[n];
+    Arrays.fill(words, -1L);
+    return words;
+  }
+
+}